@@ -0,0 +1,60 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tokenaizer.CompiledRules;
+import tokenaizer.Tokenizer;
+
+/**
+ * Время компиляции правил в зависимости от количества ключевых слов. Кеш правил не используется,
+ * каждая операция строит автомат заново
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class CompileBenchmark {
+    @Param({"10", "100", "1000", "5000"})
+    int keywords;
+
+    @Benchmark
+    public CompiledRules compile() {
+        return Corpus.keywordRules(keywords).compile();
+    }
+
+    @Benchmark
+    public Tokenizer newTokenizer() {
+        return Corpus.keywordRules(keywords).newTokenizer();
+    }
+}
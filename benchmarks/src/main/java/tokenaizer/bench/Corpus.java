@@ -0,0 +1,242 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer.bench;
+
+import java.util.SplittableRandom;
+import tokenaizer.TokenizerFactory;
+
+/**
+ * Детерминированные тексты и правила для тестов производительности. Текст зависит только от вида,
+ * размера и зерна, поэтому результаты разных запусков и машин сравнимы
+ */
+public final class Corpus {
+    static final long SEED = 20240101L;
+
+    static final String[] JAVA_KEYWORDS = {"abstract", "boolean", "break", "byte", "case", "catch", "char", "class",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for", "if",
+            "implements", "import", "instanceof", "int", "interface", "long", "new", "package", "private", "protected",
+            "public", "return", "short", "static", "super", "switch", "this", "throw", "throws", "try", "void", "while"};
+    static final String[] JAVA_OPERATORS = {"(", ")", "{", "}", "[", "]", ";", ",", ".", "=", "==", "!=", "<", ">",
+            "<=", ">=", "+", "-", "*", "/", "++", "--", "&&", "||", "!", "+=", "-=", "->", "::"};
+    static final String[] SQL_KEYWORDS = {"select", "from", "where", "and", "or", "not", "insert", "into", "values",
+            "update", "set", "delete", "join", "left", "inner", "on", "group", "by", "order", "having", "as", "null",
+            "is", "in", "between", "like", "distinct", "count", "sum", "case", "when", "then", "else", "end"};
+    static final String[] SQL_OPERATORS = {"(", ")", ",", ";", ".", "=", "<>", "<", ">", "<=", ">=", "+", "-", "*",
+            "/", "||"};
+    static final String[] JSON_KEYWORDS = {"true", "false", "null"};
+    static final String[] JSON_OPERATORS = {"{", "}", "[", "]", ":", ","};
+
+    private Corpus() {
+    }
+
+    /**
+     * Правила разбора для вида текста
+     * @param kind - java, sql или json
+     * @return фабрика токенайзеров
+     */
+    public static TokenizerFactory rules(String kind) {
+        switch (kind) {
+            case "java":
+                return TokenizerFactory.create()
+                        .addKeyword(JAVA_KEYWORDS)
+                        .addKeyword(JAVA_OPERATORS)
+                        .addComment("/*", "*/")
+                        .addComment("//", "\n")
+                        .addLiteral("\"", "\\")
+                        .addLiteral("'", "\\")
+                        .addSpace(" \t\r\n")
+                        .setSkipSpace(false);
+            case "sql":
+                return TokenizerFactory.create()
+                        .addKeyword(SQL_KEYWORDS)
+                        .addKeyword(SQL_OPERATORS)
+                        .addComment("/*", "*/")
+                        .addComment("--", "\n")
+                        .addLiteral("'", "'")
+                        .addSpace(" \t\r\n")
+                        .setIgnoreCase(true)
+                        .setSkipSpace(false);
+            case "json":
+                return TokenizerFactory.create()
+                        .addKeyword(JSON_KEYWORDS)
+                        .addKeyword(JSON_OPERATORS)
+                        .addLiteral("\"", "\\")
+                        .addSpace(" \t\r\n")
+                        .setSkipSpace(false);
+            default:
+                throw new IllegalArgumentException("Unknown corpus: " + kind);
+        }
+    }
+
+    /**
+     * Генерация текста
+     * @param kind - java, sql или json
+     * @param size - размер текста в символах, не меньше
+     * @return текст
+     */
+    public static String generate(String kind, int size) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        StringBuilder text = new StringBuilder(size + 256);
+        while (text.length() < size) {
+            switch (kind) {
+                case "java":
+                    javaMember(random, text);
+                    break;
+                case "sql":
+                    sqlStatement(random, text);
+                    break;
+                case "json":
+                    jsonObject(random, text, 0);
+                    text.append('\n');
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown corpus: " + kind);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Правила с заданным количеством ключевых слов, для зависимости времени компиляции от количества слов
+     * @param count - количество ключевых слов
+     * @return фабрика токенайзеров
+     */
+    public static TokenizerFactory keywordRules(int count) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        String[] words = new String[count];
+        for (int i = 0; i < count; i++) {
+            words[i] = identifier(random, 3 + random.nextInt(8)) + i;
+        }
+        return TokenizerFactory.create()
+                .addKeyword(words)
+                .addKeyword(JAVA_OPERATORS)
+                .addComment("/*", "*/")
+                .addLiteral("\"", "\\")
+                .addSpace(" \t\r\n");
+    }
+
+    private static void javaMember(SplittableRandom random, StringBuilder text) {
+        if (random.nextInt(4) == 0) {
+            text.append("    /**\n     * ").append(identifier(random, 6)).append(' ').append(identifier(random, 9))
+                    .append(" returns ").append(identifier(random, 5)).append("\n     */\n");
+        }
+        String name = identifier(random, 4 + random.nextInt(8));
+        text.append("    public ").append(random.nextBoolean() ? "static " : "").append(random.nextBoolean() ? "int " : "void ")
+                .append(name).append("(int ").append(identifier(random, 3)).append(", String ")
+                .append(identifier(random, 5)).append(") {\n");
+        int statements = 1 + random.nextInt(6);
+        for (int i = 0; i < statements; i++) {
+            String var = identifier(random, 1 + random.nextInt(6));
+            switch (random.nextInt(5)) {
+                case 0:
+                    text.append("        int ").append(var).append(" = ").append(random.nextInt(100000)).append(";\n");
+                    break;
+                case 1:
+                    text.append("        if (").append(var).append(" >= ").append(random.nextInt(100)).append(" && ")
+                            .append(identifier(random, 4)).append(" != null) {\n            return;\n        }\n");
+                    break;
+                case 2:
+                    text.append("        String ").append(var).append(" = \"").append(identifier(random, 6))
+                            .append(" \\\"").append(random.nextInt(1000)).append("\\\"\";\n");
+                    break;
+                case 3:
+                    text.append("        for (int i = 0; i < ").append(var).append(".length; i++) { ")
+                            .append(identifier(random, 5)).append("(i); } // ").append(identifier(random, 8)).append('\n');
+                    break;
+                default:
+                    text.append("        ").append(identifier(random, 5)).append('.').append(identifier(random, 7))
+                            .append("(").append(var).append(", '").append((char) ('a' + random.nextInt(26))).append("');\n");
+            }
+        }
+        text.append("    }\n\n");
+    }
+
+    private static void sqlStatement(SplittableRandom random, StringBuilder text) {
+        if (random.nextInt(5) == 0) {
+            text.append("-- ").append(identifier(random, 10)).append(' ').append(identifier(random, 6)).append('\n');
+        }
+        String table = identifier(random, 5 + random.nextInt(5));
+        switch (random.nextInt(3)) {
+            case 0:
+                text.append("SELECT ").append(identifier(random, 4)).append(", ").append(identifier(random, 6))
+                        .append(", count(*) FROM ").append(table).append(" t JOIN ").append(identifier(random, 7))
+                        .append(" u ON t.id = u.").append(identifier(random, 3)).append(" WHERE t.")
+                        .append(identifier(random, 5)).append(" > ").append(random.nextInt(10000)).append(" AND u.name LIKE '")
+                        .append(identifier(random, 4)).append("%' GROUP BY 1, 2 ORDER BY 3 DESC;\n");
+                break;
+            case 1:
+                text.append("INSERT INTO ").append(table).append(" (id, name, value) VALUES (")
+                        .append(random.nextInt(1000000)).append(", '").append(identifier(random, 8)).append("''s', ")
+                        .append(random.nextInt(1000)).append(".").append(random.nextInt(100)).append(");\n");
+                break;
+            default:
+                text.append("UPDATE ").append(table).append(" SET ").append(identifier(random, 6)).append(" = ")
+                        .append(identifier(random, 6)).append(" + 1 /* ").append(identifier(random, 9))
+                        .append(" */ WHERE id BETWEEN ").append(random.nextInt(1000)).append(" AND ")
+                        .append(1000 + random.nextInt(1000)).append(";\n");
+        }
+    }
+
+    private static void jsonObject(SplittableRandom random, StringBuilder text, int depth) {
+        text.append('{');
+        int fields = 1 + random.nextInt(6);
+        for (int i = 0; i < fields; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append('"').append(identifier(random, 3 + random.nextInt(8))).append("\": ");
+            int kind = random.nextInt(depth < 3 ? 7 : 5);
+            switch (kind) {
+                case 0:
+                    text.append(random.nextInt(1000000));
+                    break;
+                case 1:
+                    text.append('"').append(identifier(random, 5)).append(" \\\"").append(identifier(random, 3)).append("\\\"\"");
+                    break;
+                case 2:
+                    text.append(random.nextBoolean() ? "true" : "null");
+                    break;
+                case 3:
+                    text.append(random.nextInt(1000)).append('.').append(random.nextInt(1000));
+                    break;
+                case 4:
+                    text.append('"').append(identifier(random, 12)).append('"');
+                    break;
+                case 5:
+                    text.append("[").append(random.nextInt(100)).append(", ").append(random.nextInt(100)).append(", ");
+                    jsonObject(random, text, depth + 1);
+                    text.append("]");
+                    break;
+                default:
+                    jsonObject(random, text, depth + 1);
+            }
+        }
+        text.append('}');
+    }
+
+    private static String identifier(SplittableRandom random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,85 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tokenaizer.TokenizerSetting;
+
+/**
+ * Время чтения скомпилированных правил из json и из двоичного файла. Файлы создаются во временном каталоге
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class SettingLoadBenchmark {
+    @Param({"100", "1000"})
+    int keywords;
+
+    private Path directory;
+    private Path json;
+    private Path binary;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("tokenaizer-bench");
+        json = directory.resolve("setting.json");
+        binary = directory.resolve("setting.bin");
+        TokenizerSetting setting = Corpus.keywordRules(keywords).compile().toSetting();
+        setting.save(json.toString());
+        setting.saveBinary(binary);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(json);
+        Files.deleteIfExists(binary);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public TokenizerSetting loadJson() throws IOException {
+        return TokenizerSetting.load(json.toString());
+    }
+
+    @Benchmark
+    public TokenizerSetting loadBinary() throws IOException {
+        return TokenizerSetting.loadBinary(binary);
+    }
+}
@@ -0,0 +1,124 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import tokenaizer.Tokenizer;
+
+/**
+ * Скорость разбора. Одна операция - один токен, поэтому ops/s это токенов в секунду,
+ * а gc.alloc.rate.norm профайлера -prof gc - байт на токен. Счетчик chars дает символов в секунду,
+ * тексты в ASCII, поэтому это же байт в секунду. По окончании текста он открывается заново
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizeBenchmark {
+    @Param({"java", "sql", "json"})
+    String corpus;
+
+    @Param({"4194304"})
+    int size;
+
+    private String text;
+    private Tokenizer tokenizer;
+    // тот же текст в utf-8 для разбора по байтам
+    private byte[] bytes;
+    private Tokenizer byteTokenizer;
+
+    /**
+     * Количество символов разобранных токенов
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Chars {
+        public long chars;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            chars = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        text = Corpus.generate(corpus, size);
+        tokenizer = Corpus.rules(corpus).newTokenizer();
+        tokenizer.openString(text);
+        bytes = text.getBytes(StandardCharsets.UTF_8);
+        byteTokenizer = Corpus.rules(corpus).newTokenizer();
+        byteTokenizer.openBytes(bytes, bytes.length, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String nextToken(Chars counter) throws IOException {
+        String token = tokenizer.nextToken();
+        if (token == null) {
+            tokenizer.openString(text);
+            token = tokenizer.nextToken();
+        }
+        counter.chars += tokenizer.curTokenLength();
+        return token;
+    }
+
+    @Benchmark
+    public int advance(Chars counter, Blackhole blackhole) throws IOException {
+        int id = tokenizer.advance();
+        if (id < 0) {
+            tokenizer.openString(text);
+            id = tokenizer.advance();
+        }
+        counter.chars += tokenizer.curTokenLength();
+        blackhole.consume(tokenizer.curTokenText());
+        return id;
+    }
+
+    @Benchmark
+    public int advanceBytes(Chars counter, Blackhole blackhole) throws IOException {
+        int id = byteTokenizer.advance();
+        if (id < 0) {
+            byteTokenizer.openBytes(bytes, bytes.length, StandardCharsets.UTF_8);
+            id = byteTokenizer.advance();
+        }
+        counter.chars += byteTokenizer.curTokenLength();
+        blackhole.consume(byteTokenizer.curTokenText());
+        return id;
+    }
+}
@@ -0,0 +1,212 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Класс алфавит. Используется для перехода из обычного алфавита во внутренний алфавит алгоритма.
+ * Новый алфавит формируется динамически. Класс нужен для оптимизации.
+ */
+class Alfabet {
+    /**
+     * Размер таблицы перевода - весь диапазон char
+     */
+    public static final int TABLE_SIZE = 0x10000;
+    /**
+     * Размер таблицы перевода байт
+     */
+    public static final int BYTE_TABLE_SIZE = 0x100;
+    private HashMap<Character,Integer> items = new HashMap<>();
+    // таблица перевода, строится из items при первом обращении и сбрасывается при изменении алфавита
+    private char[] table;
+    private Integer ab_dynamic = 0;
+    /**
+     * Символ конца потока
+     */
+    public final Integer ab_eos;
+    /**
+     * Символ "любой другой"
+     */
+    public final Integer ab_alfa;
+    /**
+     * Символ рпзделитель слов
+     */
+    public  Integer ab_space;
+
+    /**
+     * Возвращает символы алфавита
+     * @return хештаблица символов
+     */
+    public HashMap<Character,Integer> getItems() {
+        return items;
+    }
+
+    /**
+     * Устанавливает символы алфавита
+     * @param items хештаблица символов
+     */
+    public void setItems(HashMap<Character,Integer> items) {
+        this.items=items;
+        this.table=null;
+    }
+
+    /**
+     * Конструктор
+     */
+    public Alfabet() {
+        ab_eos = ab_dynamic++;
+        ab_alfa= ab_dynamic++;
+        ab_space= ab_dynamic++;
+
+        items.put('\u0000',ab_eos);
+        items.put('\uFFFF',ab_eos);
+    }
+
+    /**
+     * Добавить символ в алфавит
+     * @param ch - символ входного алфавита
+     * @param abChar - символ внутреннего алфавита
+     */
+    public void add(char ch, Integer abChar) {
+        items.put(ch,abChar);
+        table=null;
+    }
+
+    /**
+     * Добавить массив символов входного алфавита с динамической создания символа внутреннего алфавита
+     * @param chars - массив символов входного алфавита
+     * @param ignoreCase -
+     */
+    public void add(char[] chars, boolean ignoreCase) {
+        table=null;
+        for (char ch : chars) {
+            if (ignoreCase) {
+                if (!this.items.containsKey(ch)) {
+                    char caseCh = Character.toUpperCase(ch);
+                    this.items.put(caseCh, ab_dynamic);
+                    caseCh = Character.toLowerCase(ch);
+                    this.items.put(caseCh, ab_dynamic++);
+                }
+            }
+            else {
+                if (!this.items.containsKey(ch)) {
+                    this.items.put(ch, ab_dynamic++);
+                }
+            }
+        }
+    }
+    public void add(char ch, boolean ignoreCase) {
+            table=null;
+            if (ignoreCase) {
+                if (!this.items.containsKey(ch)) {
+                    char caseCh = Character.toUpperCase(ch);
+                    this.items.put(caseCh, ab_dynamic);
+                    caseCh = Character.toLowerCase(ch);
+                    this.items.put(caseCh, ab_dynamic++);
+                }
+            }
+            else {
+                if (!this.items.containsKey(ch)) {
+                    this.items.put(ch, ab_dynamic++);
+                }
+            }
+    }
+
+    /**
+     * Добавить символы входного алфавита из массива строк во внутренний алфавит
+     * @param array - массив строк по которому нужно пробежаться и добавить символы входного алфавита
+     * @param ignoreCase
+     */
+    public void addAll(String [] array, boolean ignoreCase) {
+        if (array==null) return;
+        for (String str: array) {
+            add(str.toCharArray(),ignoreCase);
+        }
+    }
+
+    /**
+     * Перенумерация символов внутреннего алфавита после объединения символов в классы
+     * @param classOf - новый номер для каждого старого символа внутреннего алфавита
+     */
+    public void remap(int[] classOf) {
+        items.replaceAll((ch, abChar) -> classOf[abChar]);
+        ab_space = classOf[ab_space];
+        int size = 0;
+        for (int abClass : classOf) {
+            size = Math.max(size, abClass + 1);
+        }
+        ab_dynamic = size;
+        table = null;
+    }
+
+    /**
+     * Получить символ внутреннего алфавита по символу входного
+     * @param ch - символ входного алфавита
+     * @return - символ внутреннего алфавита
+     */
+    public int get(char ch) {
+        if (table==null) {
+            table = compile(items, ab_alfa);
+        }
+        return table[ch];
+    }
+
+    /**
+     * Таблица перевода символов входного алфавита во внутренний
+     * @return массив размером TABLE_SIZE, символы не из алфавита переводятся в ab_alfa
+     */
+    public char[] getTable() {
+        if (table==null) {
+            table = compile(items, ab_alfa);
+        }
+        return table;
+    }
+
+    /**
+     * Построение плоской таблицы перевода по хештаблице символов
+     * @param items - хештаблица символов
+     * @param ab_alfa - символ "любой другой"
+     * @return таблица перевода, индекс - код символа входного алфавита
+     */
+    static char[] compile(HashMap<Character,Integer> items, int ab_alfa) {
+        char[] table = new char[TABLE_SIZE];
+        Arrays.fill(table, (char) ab_alfa);
+        for (Map.Entry<Character,Integer> item : items.entrySet()) {
+            int abChar = item.getValue();
+            if (abChar<0 || abChar>Character.MAX_VALUE) {
+                throw new IllegalStateException("Alfabet char out of range: "+abChar);
+            }
+            table[item.getKey()] = (char) abChar;
+        }
+        return table;
+    }
+
+    /**
+     * Размер внутреннего алфавита
+     * @return размер
+     */
+    public int length() {
+        return ab_dynamic;
+    }
+}
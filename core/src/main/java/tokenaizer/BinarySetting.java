@@ -0,0 +1,237 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Двоичный формат скомпилированных правил. Все числа big-endian:
+ * <pre>
+ *   int    MAGIC
+ *   short  VERSION
+ *   byte   размер ячейки таблицы переходов: 1, 2 или 4
+ *   byte   0
+ *   int    количество состояний
+ *   int    размер внутреннего алфавита
+ *   int    количество типов токенов
+ *   int    количество символов алфавита
+ *   int    количество слов
+ *   таблица переходов строка за строкой, ячейки без знака
+ *   byte[] порядковые номера TokenType по состояниям
+ *   пары char символ, char символ внутреннего алфавита
+ *   слова: int id, int длина, символы utf-16
+ *   int    CRC32C всех предыдущих байт
+ * </pre>
+ * Файл читается через отображение в память, таблица переходов копируется в массив целиком
+ */
+final class BinarySetting {
+    // "TKZR"
+    static final int MAGIC = 0x544B5A52;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 28;
+
+    private BinarySetting() {
+    }
+
+    /**
+     * Запись правил в файл
+     * @param setting - правила
+     * @param path - путь к файлу
+     * @throws IOException
+     */
+    static void write(TokenizerSetting setting, Path path) throws IOException {
+        StateTable table = setting.stateTable;
+        HashMap<String,Integer> words = setting.wordsMap == null ? new HashMap<>() : setting.wordsMap;
+        long size = HEADER_SIZE + (long) table.stateCount * table.alfabetSize * table.cellBytes()
+                + setting.tokenType.length + setting.alfabetaItems.size() * 4L + 4;
+        for (String word : words.keySet()) {
+            size += 8 + word.length() * 2L;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Setting is too large for binary format: " + size);
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.put((byte) table.cellBytes());
+        out.put((byte) 0);
+        out.putInt(table.stateCount);
+        out.putInt(table.alfabetSize);
+        out.putInt(setting.tokenType.length);
+        out.putInt(setting.alfabetaItems.size());
+        out.putInt(words.size());
+        if (table.table8 != null) {
+            out.put(table.table8);
+        }
+        else if (table.table16 != null) {
+            out.asShortBuffer().put(table.table16);
+            out.position(out.position() + table.table16.length * 2);
+        }
+        else {
+            out.asIntBuffer().put(table.table32);
+            out.position(out.position() + table.table32.length * 4);
+        }
+        for (TokenType type : setting.tokenType) {
+            out.put((byte) type.ordinal());
+        }
+        for (Map.Entry<Character,Integer> item : setting.alfabetaItems.entrySet()) {
+            out.putChar(item.getKey());
+            out.putChar((char) (int) item.getValue());
+        }
+        for (Map.Entry<String,Integer> word : words.entrySet()) {
+            out.putInt(word.getValue());
+            out.putInt(word.getKey().length());
+            for (int i = 0; i < word.getKey().length(); i++) {
+                out.putChar(word.getKey().charAt(i));
+            }
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        out.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /**
+     * Чтение правил из файла
+     * @param path - путь к файлу
+     * @return правила
+     * @throws IOException файл поврежден или другой версии
+     */
+    static TokenizerSetting read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a tokenizer setting file: " + path);
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return read(in, path);
+        }
+    }
+
+    private static TokenizerSetting read(ByteBuffer in, Path path) throws IOException {
+        int limit = in.limit() - 4;
+        if (in.getInt(0) != MAGIC) {
+            throw new IOException("Not a tokenizer setting file: " + path);
+        }
+        if (in.getShort(4) != VERSION) {
+            throw new IOException("Unsupported tokenizer setting version " + in.getShort(4) + ": " + path);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(in.duplicate().position(0).limit(limit));
+        if ((int) crc.getValue() != in.getInt(limit)) {
+            throw new IOException("Checksum mismatch: " + path);
+        }
+        try {
+            in.position(6);
+            int cellBytes = in.get();
+            in.get();
+            int stateCount = in.getInt();
+            int alfabetSize = in.getInt();
+            int tokenTypeCount = in.getInt();
+            int itemCount = in.getInt();
+            int wordCount = in.getInt();
+            // служебные состояния Const.RS_* есть в любых скомпилированных правилах
+            if (stateCount <= Const.RS_READ_LITERAL || alfabetSize <= Const.AB_ALFA) {
+                throw new IOException("Bad table size " + stateCount + "*" + alfabetSize + ": " + path);
+            }
+            if (tokenTypeCount != stateCount) {
+                throw new IOException("Token type count " + tokenTypeCount + " != state count " + stateCount + ": " + path);
+            }
+            int cells = Math.multiplyExact(stateCount, alfabetSize);
+            StateTable table;
+            if (cellBytes == 1) {
+                byte[] table8 = new byte[cells];
+                in.get(table8);
+                table = StateTable.wrap(table8, stateCount, alfabetSize);
+            }
+            else if (cellBytes == 2) {
+                short[] table16 = new short[cells];
+                in.asShortBuffer().get(table16);
+                in.position(in.position() + cells * 2);
+                table = StateTable.wrap(table16, stateCount, alfabetSize);
+            }
+            else if (cellBytes == 4) {
+                int[] table32 = new int[cells];
+                in.asIntBuffer().get(table32);
+                in.position(in.position() + cells * 4);
+                table = StateTable.wrap(table32, stateCount, alfabetSize);
+            }
+            else {
+                throw new IOException("Bad cell size " + cellBytes + ": " + path);
+            }
+            TokenType[] types = TokenType.values();
+            TokenType[] tokenType = new TokenType[tokenTypeCount];
+            for (int i = 0; i < tokenTypeCount; i++) {
+                int ordinal = in.get();
+                if (ordinal < 0 || ordinal >= types.length) {
+                    throw new IOException("Bad token type " + ordinal + " of state " + i + ": " + path);
+                }
+                tokenType[i] = types[ordinal];
+            }
+            HashMap<Character,Integer> items = new HashMap<>(itemCount * 2);
+            for (int i = 0; i < itemCount; i++) {
+                char ch = in.getChar();
+                int abChar = in.getChar();
+                if (abChar >= alfabetSize) {
+                    throw new IOException("Alfabet char " + abChar + " out of range " + alfabetSize + ": " + path);
+                }
+                items.put(ch, abChar);
+            }
+            HashMap<String,Integer> words = new HashMap<>(wordCount * 2);
+            char[] chars = new char[64];
+            for (int i = 0; i < wordCount; i++) {
+                int id = in.getInt();
+                int length = in.getInt();
+                if (id < 0 || id >= stateCount) {
+                    throw new IOException("Word id " + id + " out of range " + stateCount + ": " + path);
+                }
+                if (chars.length < length) {
+                    chars = new char[Math.max(length, chars.length * 2)];
+                }
+                in.asCharBuffer().get(chars, 0, length);
+                in.position(in.position() + length * 2);
+                words.put(new String(chars, 0, length), id);
+            }
+            if (in.position() != limit) {
+                throw new IOException("Unexpected data at " + in.position() + ": " + path);
+            }
+            return new TokenizerSetting(items, tokenType, table, words);
+        }
+        catch (RuntimeException e) {
+            // контрольная сумма совпала, но содержимое не соответствует формату
+            throw new IOException("Corrupted tokenizer setting file: " + path, e);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Скомпилированные правила разбора в неизменяемом виде. Создаются один раз фабрикой или из
+ * TokenizerSetting и безопасно публикуются через final поля: таблицы после создания не меняются,
+ * поэтому один объект разделяется любым количеством токенайзеров в разных потоках.
+ * Токенайзер, созданный newTokenizer(), только ссылается на таблицы правил и ничего не копирует,
+ * его состояние - позиция разбора в своем потоке символов.
+ * </p>Пример использования: <pre>
+ *    CompiledRules rules = TokenizerFactory.create().addKeyword(new String[] {"begin"}).compile();
+ *    // в каждом потоке
+ *    Tokenizer tokenizer = rules.newTokenizer();
+ *    tokenizer.openString(text);
+ * </pre>
+ * @see TokenizerPool
+ */
+public final class CompiledRules {
+    // таблица переходов состояний
+    final StateTable stateTable;
+    // типы токенов по состояниям
+    final TokenType[] tokenType;
+    // порядковые номера типов токенов по состояниям, для заполнения TokenBatch
+    final byte[] tokenTypeOrdinal;
+    // плоская таблица перевода символа входного алфавита во внутренний, индекс - код символа
+    final char[] abTable;
+    // таблица перевода байта во внутренний алфавит для байтового ввода, начало abTable
+    final char[] byteTable;
+    // символы алфавита тела комментария, литерала и других петель по состояниям, null если петли нет
+    final boolean[][] bodyLoop;
+    // байты ASCII, останавливающие пословный просмотр тела, размноженные на 8 байт, null если их слишком много
+    final long[][] bodyStops;
+    // канонический текст ключевых слов и операторов по id, null для остальных id
+    final String[] wordText;
+    // символы алфавита, для обратного преобразования в TokenizerSetting
+    private final HashMap<Character,Integer> alfabetaItems;
+    // id ключевых слов и операторов
+    private final Map<String,Integer> wordsMap;
+    // пропускать разделители слов в новых токенайзерах
+    private final boolean skipSpace;
+    // отпечаток таблиц правил, вычисляется при первом обращении
+    private volatile RulesFingerprint fingerprint;
+
+    private CompiledRules(TokenizerSetting setting, boolean skipSpace) {
+        this.stateTable = setting.stateTable;
+        this.tokenType = setting.tokenType.clone();
+        this.tokenTypeOrdinal = new byte[tokenType.length];
+        for (int i=0;i<tokenType.length;i++) {
+            tokenTypeOrdinal[i] = (byte) tokenType[i].ordinal();
+        }
+        this.alfabetaItems = new HashMap<>(setting.alfabetaItems);
+        // таблица алфавита строится по копии символов, чтобы не зависеть от дальнейших изменений настроек
+        this.abTable = Alfabet.compile(alfabetaItems, Const.AB_ALFA);
+        this.byteTable = Arrays.copyOf(abTable, Alfabet.BYTE_TABLE_SIZE);
+        this.bodyLoop = bodyLoops(stateTable);
+        this.bodyStops = bodyStops(bodyLoop, byteTable);
+        this.wordsMap = Collections.unmodifiableMap(new HashMap<>(setting.wordsMap));
+        this.wordText = new String[tokenType.length];
+        for (Map.Entry<String,Integer> word : wordsMap.entrySet()) {
+            wordText[word.getValue()] = word.getKey().intern();
+        }
+        this.skipSpace = skipSpace;
+    }
+
+    private CompiledRules(CompiledRules rules, boolean skipSpace) {
+        this.stateTable = rules.stateTable;
+        this.tokenType = rules.tokenType;
+        this.tokenTypeOrdinal = rules.tokenTypeOrdinal;
+        this.abTable = rules.abTable;
+        this.byteTable = rules.byteTable;
+        this.bodyLoop = rules.bodyLoop;
+        this.bodyStops = rules.bodyStops;
+        this.alfabetaItems = rules.alfabetaItems;
+        this.wordsMap = rules.wordsMap;
+        this.wordText = rules.wordText;
+        this.skipSpace = skipSpace;
+    }
+
+    /**
+     * Поиск петель автомата, по которым токенайзер проходит тело токена без переходов по таблице.
+     * Для состояний общей ветки разбора петля - символы, переводящие состояние в себя, например тело
+     * комментария до первого символа окончания. Для RS_READ_LITERAL - символы, возвращающие в него
+     * через RS_STATE_LITERAL, то есть тело литерала до окончания или экранирования
+     * @param stateTable - таблица переходов
+     * @return множества символов алфавита по состояниям
+     */
+    private static boolean[][] bodyLoops(StateTable stateTable) {
+        boolean[][] loops = new boolean[stateTable.stateCount][];
+        for (int state = 0; state < stateTable.stateCount; state++) {
+            if (state == Const.RS_FINISH || state == Const.RS_READ || state == Const.RS_STATE_ALFA
+                    || state == Const.RS_TOKENSTART || state == Const.RS_TOKENEND
+                    || state == Const.RS_BUFFERASTOKEN || state == Const.RS_STATE_LITERAL) {
+                continue;
+            }
+            boolean[] loop = new boolean[stateTable.alfabetSize];
+            boolean found = false;
+            for (int abChar = 0; abChar < stateTable.alfabetSize; abChar++) {
+                if (abChar == Const.AB_EOS) {
+                    continue;
+                }
+                if (state == Const.RS_READ_LITERAL) {
+                    loop[abChar] = stateTable.get(state, abChar) == Const.RS_STATE_LITERAL
+                            && stateTable.get(Const.RS_STATE_LITERAL, abChar) == state;
+                }
+                else {
+                    loop[abChar] = stateTable.get(state, abChar) == state;
+                }
+                found |= loop[abChar];
+            }
+            loops[state] = found ? loop : null;
+        }
+        return loops;
+    }
+
+    /**
+     * Байты ASCII, на которых пословный просмотр тела петли останавливается: не входящие в петлю и перевод строки
+     * @param loops - петли по состояниям
+     * @param byteTable - таблица перевода байт
+     * @return байты размноженные на 8 байт по состояниям, null если петли нет или байт больше 8
+     */
+    private static long[][] bodyStops(boolean[][] loops, char[] byteTable) {
+        long[][] stops = new long[loops.length][];
+        for (int state = 0; state < loops.length; state++) {
+            if (loops[state] == null) {
+                continue;
+            }
+            long[] bytes = new long[8];
+            int count = 0;
+            for (int b = 0; b < 0x80 && count <= bytes.length; b++) {
+                if (b == '\n' || !loops[state][byteTable[b]]) {
+                    if (count < bytes.length) {
+                        bytes[count] = b * 0x0101010101010101L;
+                    }
+                    count++;
+                }
+            }
+            stops[state] = count <= bytes.length ? Arrays.copyOf(bytes, count) : null;
+        }
+        return stops;
+    }
+
+    /**
+     * Создание правил из настроек токенайзера. Настройки копируются, их дальнейшие изменения на правила не влияют
+     * @param setting - настройки
+     * @return скомпилированные правила
+     */
+    public static CompiledRules of(TokenizerSetting setting) {
+        return of(setting, true);
+    }
+
+    /**
+     * Создание правил из настроек токенайзера
+     * @param setting - настройки
+     * @param skipSpace - пропускать разделители слов в новых токенайзерах
+     * @return скомпилированные правила
+     */
+    public static CompiledRules of(TokenizerSetting setting, boolean skipSpace) {
+        return new CompiledRules(setting, skipSpace);
+    }
+
+    /**
+     * Создание нового токенайзера по правилам. Таблицы не копируются
+     * @return токенайзер
+     */
+    public Tokenizer newTokenizer() {
+        return new Tokenizer(this);
+    }
+
+    /**
+     * Возвращает настройки правил для сохранения
+     * @return TokenizerSetting - настройки
+     */
+    public TokenizerSetting toSetting() {
+        return new TokenizerSetting(new HashMap<>(alfabetaItems), tokenType.clone(), stateTable, new HashMap<>(wordsMap));
+    }
+
+    /**
+     * Те же правила с другим значением пропуска разделителей слов. Таблицы не копируются
+     * @param skipSpace - пропускать разделители слов в новых токенайзерах
+     * @return правила
+     */
+    public CompiledRules withSkipSpace(boolean skipSpace) {
+        return skipSpace == this.skipSpace ? this : new CompiledRules(this, skipSpace);
+    }
+
+    /**
+     * Оценка памяти, занимаемой таблицами правил
+     * @return количество байт
+     */
+    long memorySize() {
+        long size = (long) stateTable.stateCount * stateTable.alfabetSize * stateTable.cellBytes();
+        size += (abTable.length + byteTable.length) * 2L + tokenType.length * 5L;
+        size += wordText.length * 4L;
+        size += alfabetaItems.size() * 64L;
+        for (String word : wordsMap.keySet()) {
+            size += 64 + word.length() * 2L;
+        }
+        return size;
+    }
+
+    /**
+     * Пропускают ли разделители слов новые токенайзеры
+     * @return логический тип
+     */
+    public boolean isSkipSpace() {
+        return skipSpace;
+    }
+
+    /**
+     * id ключевых слов и операторов
+     * @return неизменяемая таблица слово - id
+     */
+    public Map<String,Integer> getWordsMap() {
+        return wordsMap;
+    }
+
+    /**
+     * Канонический текст ключевого слова или оператора по id токена, без обращения к тексту потока
+     * @param id - id токена
+     * @return интернированная строка слова или null если id не ключевое слово и не оператор
+     */
+    public String getWord(int id) {
+        return id >= 0 && id < wordText.length ? wordText[id] : null;
+    }
+
+    /**
+     * Отпечаток скомпилированных правил: SHA-256 от таблицы переходов, типов токенов, таблицы алфавита
+     * и слов. В отличие от отпечатка фабрики не зависит от того, как правила получены, и меняется
+     * при любом изменении разбора. Пропуск разделителей слов в отпечаток не входит
+     * @return отпечаток
+     */
+    public RulesFingerprint fingerprint() {
+        RulesFingerprint result = fingerprint;
+        if (result == null) {
+            RulesFingerprint.Builder builder = new RulesFingerprint.Builder();
+            StringBuilder cells = new StringBuilder();
+            for (int cell : stateTable.toCells()) {
+                cells.append((char) (cell >>> 16)).append((char) cell);
+            }
+            builder.add('T', String.valueOf(stateTable.stateCount), String.valueOf(stateTable.alfabetSize), cells.toString());
+            StringBuilder types = new StringBuilder();
+            for (byte ordinal : tokenTypeOrdinal) {
+                types.append((char) ordinal);
+            }
+            builder.add('Y', types.toString());
+            builder.add('A', new String(abTable));
+            for (Map.Entry<String,Integer> word : new TreeMap<>(wordsMap).entrySet()) {
+                builder.add('W', word.getKey(), String.valueOf(word.getValue()));
+            }
+            result = builder.build(false);
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    /**
+     * Количество состояний автомата
+     * @return количество состояний
+     */
+    public int getStateCount() {
+        return stateTable.stateCount;
+    }
+}
@@ -0,0 +1,39 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+/**
+ * Общие константы
+ */
+class Const {
+    public static final byte RS_READ=1;
+    public static final byte RS_STATE_ALFA =2;
+    public static final byte RS_TOKENSTART =3;
+    public static final byte RS_TOKENEND =4;
+    public static final byte RS_BUFFERASTOKEN =5;
+    public static final byte RS_READ_LITERAL =9;
+    public static final byte RS_STATE_LITERAL =7;
+    public static final byte RS_FINISH=0;
+    // фиксированные символы внутреннего алфавита, назначаются конструктором Alfabet
+    public static final int AB_EOS=0;
+    public static final int AB_ALFA=1;
+    public static final int AB_SPACE=2;
+}
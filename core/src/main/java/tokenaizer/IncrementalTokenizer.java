@@ -0,0 +1,536 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Разбор редактируемого документа. Токены хранятся блоками до BLOCK_SIZE токенов, у каждого блока есть
+ * контрольная точка - состояние разбора перед его первым токеном. После правки текста разбор продолжается
+ * с контрольной точки последнего блока перед правкой и останавливается, как только состояние разбора
+ * совпадет с контрольной точкой старого блока за правкой. Дальше старые блоки верны со сдвигом смещений
+ * и строк, который хранится в самом блоке и не требует прохода по его токенам. Текст хранится с разрывом
+ * в месте последней правки, поэтому правки рядом друг с другом не сдвигают весь текст.
+ * Объем работы пропорционален правке и расстоянию от предыдущей правки, по размеру документа остается
+ * только пересчет номеров первых токенов блоков.
+ * </p>Пример использования: <pre>
+ *    IncrementalTokenizer document = new IncrementalTokenizer(rules);
+ *    document.setText(text);
+ *    IncrementalTokenizer.Change change = document.edit(10, 3, "begin");
+ *    for (int i = change.first; i < change.newEnd; i++) {
+ *        System.out.println(document.getTokenType(i) + ":" + document.getTokenText(i));
+ *    }
+ * </pre>
+ * Объект не потокобезопасен
+ */
+public class IncrementalTokenizer {
+    // максимальное количество токенов в блоке, контрольные точки не реже чем через BLOCK_SIZE токенов
+    static final int BLOCK_SIZE = 64;
+
+    private final CompiledRules rules;
+    private final Tokenizer tokenizer;
+    private final GapText text = new GapText();
+    // блоки токенов по возрастанию смещения
+    private Block[] blocks = new Block[16];
+    private int blockCount;
+    private int count;
+    // блок последнего обращения к токену по номеру, для последовательного чтения
+    private int lastBlock;
+
+    /**
+     * Изменение списка токенов после правки: токены [first, oldEnd) старого списка
+     * заменены токенами [first, newEnd) нового
+     */
+    public static final class Change {
+        public final int first;
+        public final int oldEnd;
+        public final int newEnd;
+
+        Change(int first, int oldEnd, int newEnd) {
+            this.first = first;
+            this.oldEnd = oldEnd;
+            this.newEnd = newEnd;
+        }
+
+        @Override
+        public String toString() {
+            return "Change{first=" + first + ", oldEnd=" + oldEnd + ", newEnd=" + newEnd + "}";
+        }
+    }
+
+    /**
+     * Конструктор
+     * @param rules - скомпилированные правила
+     */
+    public IncrementalTokenizer(CompiledRules rules) {
+        this.rules = rules;
+        this.tokenizer = rules.newTokenizer();
+    }
+
+    /**
+     * возвращать/невозвращать токены разделители слов. Задается до setText
+     * @param skipSpace логический тип
+     * @return токенайзер
+     */
+    public IncrementalTokenizer setSkipSpace(boolean skipSpace) {
+        tokenizer.setSkipSpace(skipSpace);
+        return this;
+    }
+
+    /**
+     * Установка текста документа и полный разбор
+     * @param text - текст
+     * @return изменение: все токены документа
+     * @throws IOException
+     */
+    public Change setText(CharSequence text) throws IOException {
+        this.text.set(text);
+        int oldCount = count;
+        count = 0;
+        Arrays.fill(blocks, 0, blockCount, null);
+        blockCount = 0;
+        Change change = relex(-1, 0, 0, 0);
+        return new Change(0, oldCount, change.newEnd);
+    }
+
+    /**
+     * Правка текста и повторный разбор измененной части
+     * @param offset - смещение правки
+     * @param removed - количество удаленных символов
+     * @param inserted - вставленный текст
+     * @return изменение списка токенов
+     * @throws IOException
+     */
+    public Change edit(int offset, int removed, CharSequence inserted) throws IOException {
+        if (offset < 0 || removed < 0 || offset > text.length() - removed) {
+            throw new IndexOutOfBoundsException("edit " + offset + "+" + removed + ", length " + text.length());
+        }
+        int lineDelta = -text.countLines(offset, offset + removed);
+        for (int i = 0; i < inserted.length(); i++) {
+            if (inserted.charAt(i) == '\n') {
+                lineDelta++;
+            }
+        }
+        // последний блок, контрольная точка которого прочитала только символы до правки
+        int low = 0;
+        int high = blockCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blocks[mid].start.next + blocks[mid].offsetShift <= offset) {
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        text.replace(offset, removed, inserted);
+        return relex(high, offset + removed, inserted.length() - removed, lineDelta);
+    }
+
+    /**
+     * Разбор с контрольной точки блока до совпадения состояния с контрольной точкой старого блока или до конца текста
+     * @param from - номер блока, с которого начинается разбор, или -1 для разбора с начала
+     * @param editEnd - конец правки в старом тексте
+     * @param delta - сдвиг смещений старого текста за правкой
+     * @param lineDelta - сдвиг номеров строк за правкой
+     * @return изменение списка токенов
+     * @throws IOException
+     */
+    private Change relex(int from, int editEnd, int delta, int lineDelta) throws IOException {
+        int first;
+        if (from < 0) {
+            first = 0;
+            from = 0;
+            tokenizer.setReader(text.reader(0));
+        }
+        else {
+            Block block = blocks[from];
+            first = block.first;
+            LexerState start = block.start.copy();
+            start.move(block.offsetShift, block.lineShift);
+            long mark = Math.min(start.tokStart, start.offset);
+            tokenizer.openReader(text.reader((int) mark), mark);
+            tokenizer.restoreState(start);
+        }
+        Block[] fresh = new Block[4];
+        int freshCount = 0;
+        int freshTokens = 0;
+        int old = from + 1;
+        int synced = -1;
+        LexerState before = new LexerState();
+        while (true) {
+            tokenizer.saveState(before);
+            // поиск старого блока за правкой с той же контрольной точкой
+            while (old < blockCount && blocks[old].start.offset + blocks[old].offsetShift + delta < before.offset) {
+                old++;
+            }
+            for (int i = old; i < blockCount && blocks[i].start.offset + blocks[i].offsetShift + delta == before.offset; i++) {
+                if (sameAfterEdit(before, blocks[i], editEnd, delta, lineDelta)) {
+                    synced = i;
+                    break;
+                }
+            }
+            if (synced >= 0) {
+                break;
+            }
+            if (freshCount == 0 || fresh[freshCount - 1].count == BLOCK_SIZE) {
+                if (freshCount == fresh.length) {
+                    fresh = Arrays.copyOf(fresh, freshCount * 2);
+                }
+                fresh[freshCount++] = new Block(before.copy());
+            }
+            int id = tokenizer.advance();
+            if (id < 0) {
+                break;
+            }
+            fresh[freshCount - 1].add(id, (int) tokenizer.curTokenOffset(), tokenizer.curTokenLength(),
+                    tokenizer.curLine(), tokenizer.curPos());
+            freshTokens++;
+        }
+        if (freshCount > 0 && fresh[freshCount - 1].count == 0) {
+            freshCount--;
+        }
+        int oldEnd = synced >= 0 ? blocks[synced].first : count;
+        int newEnd = first + freshTokens;
+        int to = synced >= 0 ? synced : blockCount;
+        // короткий последний новый блок забирает токены следующего старого блока, чтобы блоки не дробились
+        if (freshCount > 0 && to < blockCount && fresh[freshCount - 1].count + blocks[to].count <= BLOCK_SIZE) {
+            fresh[freshCount - 1].append(blocks[to], delta, lineDelta);
+            to++;
+        }
+
+        // блоки: новые вместо [from, to), у следующих меняется сдвиг
+        int total = blockCount - (to - from) + freshCount;
+        if (total > blocks.length) {
+            blocks = Arrays.copyOf(blocks, Math.max(total, blocks.length + (blocks.length >> 1)));
+        }
+        System.arraycopy(blocks, to, blocks, from + freshCount, blockCount - to);
+        System.arraycopy(fresh, 0, blocks, from, freshCount);
+        Arrays.fill(blocks, total, Math.max(total, blockCount), null);
+        blockCount = total;
+        int next = first;
+        for (int i = from; i < blockCount; i++) {
+            Block block = blocks[i];
+            if (i >= from + freshCount) {
+                block.offsetShift += delta;
+                block.lineShift += lineDelta;
+            }
+            block.first = next;
+            next += block.count;
+        }
+        count = next;
+        lastBlock = 0;
+        return new Change(first, oldEnd, newEnd);
+    }
+
+    /**
+     * Совпадение нового состояния разбора с контрольной точкой старого блока, прочитавшей только текст за правкой
+     * @param now - состояние разбора нового текста
+     * @param old - блок старого текста
+     * @param editEnd - конец правки в старом тексте
+     * @param delta - сдвиг смещений
+     * @param lineDelta - сдвиг номеров строк
+     * @return true если дальнейшие токены совпадут со старыми со сдвигом
+     */
+    private static boolean sameAfterEdit(LexerState now, Block old, int editEnd, int delta, int lineDelta) {
+        LexerState state = old.start;
+        long shift = old.offsetShift;
+        long move = shift + delta;
+        int lines = old.lineShift + lineDelta;
+        return Math.min(state.tokStart, state.offset) + shift >= editEnd
+                && now.offset == state.offset + move && now.next == state.next + move && now.tokStart == state.tokStart + move
+                && now.ch == state.ch && now.pending == state.pending && now.state == state.state && now.bufIndex == state.bufIndex
+                && now.tokLength == state.tokLength && now.tokState == state.tokState
+                && now.line == state.line + lines && now.col == state.col
+                && now.tokLine == state.tokLine + lines && now.tokCol == state.tokCol;
+    }
+
+    /**
+     * Текст документа
+     * @return строка
+     */
+    public String getText() {
+        return text.substring(0, text.length());
+    }
+
+    /**
+     * Длина текста документа
+     * @return количество символов
+     */
+    public int length() {
+        return text.length();
+    }
+
+    /**
+     * Количество токенов документа
+     * @return количество токенов
+     */
+    public int getTokenCount() {
+        return count;
+    }
+
+    /**
+     * Номер токена, содержащего символ со смещением offset, или последнего токена перед ним
+     * @param offset - смещение символа
+     * @return номер токена или -1, если до смещения токенов нет
+     */
+    public int findToken(int offset) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blocks[mid].offset[0] + blocks[mid].offsetShift <= offset) {
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        if (high < 0) {
+            return -1;
+        }
+        Block block = blocks[high];
+        int i = 1;
+        while (i < block.count && block.offset[i] + block.offsetShift <= offset) {
+            i++;
+        }
+        return block.first + i - 1;
+    }
+
+    public int getTokenId(int i) {
+        Block block = block(i);
+        return block.id[i - block.first];
+    }
+
+    public TokenType getTokenType(int i) {
+        return rules.tokenType[getTokenId(i)];
+    }
+
+    public int getTokenOffset(int i) {
+        Block block = block(i);
+        return block.offset[i - block.first] + block.offsetShift;
+    }
+
+    public int getTokenLength(int i) {
+        Block block = block(i);
+        return block.length[i - block.first];
+    }
+
+    public int getTokenLine(int i) {
+        Block block = block(i);
+        return block.line[i - block.first] + block.lineShift;
+    }
+
+    public int getTokenCol(int i) {
+        Block block = block(i);
+        return block.col[i - block.first];
+    }
+
+    /**
+     * Текст токена
+     * @param i - номер токена
+     * @return строка
+     */
+    public String getTokenText(int i) {
+        Block block = block(i);
+        int offset = block.offset[i - block.first] + block.offsetShift;
+        return text.substring(offset, offset + block.length[i - block.first]);
+    }
+
+    /**
+     * Блок, содержащий токен
+     * @param i - номер токена
+     * @return блок
+     */
+    private Block block(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("token " + i + ", count " + count);
+        }
+        Block block = blocks[lastBlock];
+        if (i >= block.first && i < block.first + block.count) {
+            return block;
+        }
+        int low = 0;
+        int high = blockCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blocks[mid].first <= i) {
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        lastBlock = high;
+        return blocks[high];
+    }
+
+    /**
+     * Блок токенов с контрольной точкой перед первым токеном. Смещения и строки токенов и контрольной точки
+     * хранятся без сдвига, действительное значение - сохраненное плюс offsetShift или lineShift
+     */
+    private static final class Block {
+        // номер первого токена блока в документе
+        int first;
+        int offsetShift;
+        int lineShift;
+        final LexerState start;
+        int count;
+        final int[] id = new int[BLOCK_SIZE];
+        final int[] offset = new int[BLOCK_SIZE];
+        final int[] length = new int[BLOCK_SIZE];
+        final int[] line = new int[BLOCK_SIZE];
+        final int[] col = new int[BLOCK_SIZE];
+
+        Block(LexerState start) {
+            this.start = start;
+        }
+
+        void add(int tokenId, int tokenOffset, int tokenLength, int tokenLine, int tokenCol) {
+            id[count] = tokenId;
+            offset[count] = tokenOffset - offsetShift;
+            length[count] = tokenLength;
+            line[count] = tokenLine - lineShift;
+            col[count++] = tokenCol;
+        }
+
+        /**
+         * Добавление токенов другого блока со сдвигом
+         * @param other - блок
+         * @param delta - дополнительный сдвиг смещений токенов блока
+         * @param lineDelta - дополнительный сдвиг номеров строк токенов блока
+         */
+        void append(Block other, int delta, int lineDelta) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.id[i], other.offset[i] + other.offsetShift + delta, other.length[i],
+                        other.line[i] + other.lineShift + lineDelta, other.col[i]);
+            }
+        }
+    }
+
+    /**
+     * Текст с разрывом: символы [0, gapStart) и [gapEnd, chars.length) массива. Правка переносит разрыв
+     * к месту правки, сдвигаются только символы между старым и новым местом разрыва
+     */
+    private static final class GapText {
+        private char[] chars = new char[16];
+        private int gapStart;
+        private int gapEnd = chars.length;
+
+        int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        void set(CharSequence text) {
+            int length = text.length();
+            chars = new char[length + (length >> 3) + 16];
+            for (int i = 0; i < length; i++) {
+                chars[i] = text.charAt(i);
+            }
+            gapStart = length;
+            gapEnd = chars.length;
+        }
+
+        void replace(int offset, int removed, CharSequence inserted) {
+            moveGap(offset);
+            gapEnd += removed;
+            int added = inserted.length();
+            if (gapEnd - gapStart < added) {
+                int length = length();
+                char[] grown = new char[Math.max(length + added, chars.length + (chars.length >> 1)) + 16];
+                int tail = chars.length - gapEnd;
+                System.arraycopy(chars, 0, grown, 0, gapStart);
+                System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+                gapEnd = grown.length - tail;
+                chars = grown;
+            }
+            for (int i = 0; i < added; i++) {
+                chars[gapStart++] = inserted.charAt(i);
+            }
+        }
+
+        private void moveGap(int offset) {
+            if (offset < gapStart) {
+                int moved = gapStart - offset;
+                System.arraycopy(chars, offset, chars, gapEnd - moved, moved);
+                gapStart -= moved;
+                gapEnd -= moved;
+            }
+            else if (offset > gapStart) {
+                int moved = offset - gapStart;
+                System.arraycopy(chars, gapEnd, chars, gapStart, moved);
+                gapStart += moved;
+                gapEnd += moved;
+            }
+        }
+
+        /**
+         * Количество переводов строки в диапазоне
+         */
+        int countLines(int from, int to) {
+            int lines = 0;
+            for (int i = from; i < to; i++) {
+                if (chars[i < gapStart ? i : i + gapEnd - gapStart] == '\n') {
+                    lines++;
+                }
+            }
+            return lines;
+        }
+
+        String substring(int from, int to) {
+            char[] result = new char[to - from];
+            copy(from, result, 0, to - from);
+            return new String(result);
+        }
+
+        private void copy(int from, char[] dest, int destPos, int length) {
+            int before = Math.min(length, Math.max(0, gapStart - from));
+            System.arraycopy(chars, from, dest, destPos, before);
+            System.arraycopy(chars, from + before + gapEnd - gapStart, dest, destPos + before, length - before);
+        }
+
+        /**
+         * Поток символов текста со смещения from. Текст не должен меняться до окончания чтения
+         */
+        Reader reader(int from) {
+            return new Reader() {
+                private int pos = from;
+
+                @Override
+                public int read(char[] cbuf, int off, int len) {
+                    int n = Math.min(len, length() - pos);
+                    if (n <= 0) {
+                        return len == 0 ? 0 : -1;
+                    }
+                    copy(pos, cbuf, off, n);
+                    pos += n;
+                    return n;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+/**
+ * Состояние разбора между токенами: позиция чтения, состояние автомата и буфер заглядывания вперед.
+ * Разбор, продолженный из равных состояний над одним текстом, выдает одинаковые токены
+ */
+class LexerState {
+    // смещение текущего символа и следующего читаемого символа
+    long offset;
+    long next;
+    // те же смещения в символах
+    long charOffset;
+    long charNext;
+    // текущий символ и ожидающий выдачи младший символ суррогатной пары
+    char ch;
+    char pending;
+    int state;
+    int bufIndex;
+    // буфер заглядывания вперед
+    long tokStart;
+    long tokCharStart;
+    int tokLength;
+    int tokState;
+    int tokLine;
+    int tokCol;
+    // позиция текущего символа
+    int line;
+    int col;
+
+    /**
+     * Сравнение состояний без учета номеров строк и позиций
+     * @param other - другое состояние
+     * @return true если разбор из обоих состояний выдаст одни и те же токены
+     */
+    boolean sameLexer(LexerState other) {
+        return offset==other.offset && next==other.next && ch==other.ch && pending==other.pending
+                && state==other.state && bufIndex==other.bufIndex
+                && tokStart==other.tokStart && tokLength==other.tokLength && tokState==other.tokState;
+    }
+
+    /**
+     * Копия состояния со сдвигом номеров строк
+     * @param lineShift - сдвиг номера строки
+     * @return новое состояние
+     */
+    LexerState shiftLines(int lineShift) {
+        LexerState copy = copy();
+        copy.line += lineShift;
+        copy.tokLine += lineShift;
+        return copy;
+    }
+
+    /**
+     * Сдвиг смещений и номеров строк состояния, позиции в строке не меняются
+     * @param delta - сдвиг смещений
+     * @param lineShift - сдвиг номера строки
+     */
+    void move(long delta, int lineShift) {
+        offset += delta;
+        next += delta;
+        charOffset += delta;
+        charNext += delta;
+        tokStart += delta;
+        tokCharStart += delta;
+        line += lineShift;
+        tokLine += lineShift;
+    }
+
+    /**
+     * Копия состояния
+     * @return новое состояние
+     */
+    LexerState copy() {
+        LexerState copy = new LexerState();
+        copy.offset = offset;
+        copy.next = next;
+        copy.charOffset = charOffset;
+        copy.charNext = charNext;
+        copy.ch = ch;
+        copy.pending = pending;
+        copy.state = state;
+        copy.bufIndex = bufIndex;
+        copy.tokStart = tokStart;
+        copy.tokCharStart = tokCharStart;
+        copy.tokLength = tokLength;
+        copy.tokState = tokState;
+        copy.tokLine = tokLine;
+        copy.tokCol = tokCol;
+        copy.line = line;
+        copy.col = col;
+        return copy;
+    }
+}
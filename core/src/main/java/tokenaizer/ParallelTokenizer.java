@@ -0,0 +1,709 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Параллельный разбор большого текста на токены. Текст делится на куски по границам строк,
+ * куски разбираются одновременно в ForkJoinPool, каждый кусок с начального состояния автомата.
+ * Затем куски склеиваются по порядку: состояние разбора на конце предыдущего куска сравнивается
+ * с состояниями, запомненными в начале следующего. При совпадении токены куска верны как есть,
+ * иначе (кусок начался внутри коментария, литерала или заглядывания вперед) разбор продолжается
+ * последовательно с конца предыдущего куска до совпадения состояний.
+ * Номера строк токенов пересчитываются в номера от начала текста.
+ * <p>
+ * Результат выдается пакетами TokenBatch в порядке текста в потоке вызова. Одновременно в работе
+ * не больше 2*parallelism+1 кусков, память не зависит от размера текста.
+ * Текст без переводов строк не делится и разбирается одним куском.
+ * </p>Пример использования: <pre>
+ *    ParallelTokenizer parallel = new ParallelTokenizer(tokenizer.getRules());
+ *    parallel.tokenizeFile(Path.of("big.sql"), StandardCharsets.UTF_8, batch -> {
+ *        for (int i = 0; i < batch.size(); i++) {
+ *            System.out.println(batch.getType(i) + " line=" + batch.line[i]);
+ *        }
+ *    });
+ * </pre>
+ * @see Tokenizer
+ */
+public class ParallelTokenizer {
+    // размер куска по умолчанию, в символах или байтах для файла
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    // емкость пакетов, в которые собираются токены куска
+    static final int BATCH_SIZE = 4096;
+    // состояния запоминаются перед каждым из первых SYNC_DENSE токенов куска, дальше перед каждым SYNC_STEP
+    static final int SYNC_DENSE = 64;
+    static final int SYNC_STEP = 256;
+    // окно поиска перевода строки в файле
+    static final int SCAN_WINDOW = 1 << 16;
+    // при делении потока токенов текст режется на куски, примерно SEGMENTS_PER_THREAD на поток пула,
+    // но не короче MIN_SEGMENT_SIZE символов
+    static final int SEGMENTS_PER_THREAD = 4;
+    static final int MIN_SEGMENT_SIZE = 1 << 14;
+
+    private final CompiledRules rules;
+    // пропускаемые типы и id токенов
+    private final EnumSet<TokenType> skipTypes = EnumSet.noneOf(TokenType.class);
+    private final BitSet skipIds = new BitSet();
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /**
+     * Конструктор
+     * @param setting - скомпилированные правила разбора
+     */
+    public ParallelTokenizer(TokenizerSetting setting) {
+        this(CompiledRules.of(setting));
+    }
+
+    /**
+     * Конструктор
+     * @param rules - скомпилированные правила разбора, общие для всех задач
+     */
+    public ParallelTokenizer(CompiledRules rules) {
+        this.rules = rules;
+        if (rules.isSkipSpace()) {
+            skipTypes.add(TokenType.space);
+        }
+    }
+
+    /**
+     * возвращать/невозвращать токены разделители слов
+     * @param skipSpace логический тип
+     * @return параллельный токенайзер
+     */
+    public ParallelTokenizer setSkipSpace(boolean skipSpace) {
+        return setSkip(TokenType.space, skipSpace);
+    }
+
+    /**
+     * Пропускать/не пропускать токены типа
+     * @param type - тип токенов
+     * @param skip - логический тип
+     * @return параллельный токенайзер
+     * @see Tokenizer#setSkip(TokenType, boolean)
+     */
+    public ParallelTokenizer setSkip(TokenType type, boolean skip) {
+        if (skip) {
+            skipTypes.add(type);
+        }
+        else {
+            skipTypes.remove(type);
+        }
+        return this;
+    }
+
+    /**
+     * Пропускать/не пропускать токены с id
+     * @param id - id токена
+     * @param skip - логический тип
+     * @return параллельный токенайзер
+     * @see Tokenizer#setSkipId(int, boolean)
+     */
+    public ParallelTokenizer setSkipId(int id, boolean skip) {
+        skipIds.set(id, skip);
+        return this;
+    }
+
+    /**
+     * Размер куска текста, разбираемого одной задачей
+     * @param chunkSize - размер в символах, для файла в байтах
+     * @return параллельный токенайзер
+     */
+    public ParallelTokenizer setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Пул для разбора кусков, по умолчанию ForkJoinPool.commonPool()
+     * @param pool - пул потоков
+     * @return параллельный токенайзер
+     */
+    public ParallelTokenizer setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Разбор строки
+     * @param text - текст
+     * @param sink - получатель пакетов токенов, вызывается в потоке вызова в порядке текста
+     * @return количество токенов
+     * @throws IOException
+     */
+    public long tokenize(String text, Consumer<TokenBatch> sink) throws IOException {
+        return tokenize(text.toCharArray(), sink);
+    }
+
+    /**
+     * Разбор массива символов. Массив не копируется и не должен меняться во время разбора
+     * @param text - текст
+     * @param sink - получатель пакетов токенов, вызывается в потоке вызова в порядке текста
+     * @return количество токенов
+     * @throws IOException
+     */
+    public long tokenize(char[] text, Consumer<TokenBatch> sink) throws IOException {
+        return new Run(new CharInput(text), sink, chunkSize).run();
+    }
+
+    /**
+     * Токены массива символов как Stream. Последовательный поток разбирается лениво одним токенайзером.
+     * В параллельном потоке при первом делении текст разбирается параллельно только для поиска
+     * состояний разбора на границах кусков, токены не сохраняются. Дальше делится список кусков,
+     * каждый кусок разбирается лениво при обходе со своего состояния.
+     * Массив не копируется и не должен меняться во время обхода
+     * @param text - текст
+     * @return поток токенов
+     */
+    public Stream<TokenRecord> tokens(char[] text) {
+        return TokenSpliterator.records(cursor(text));
+    }
+
+    /**
+     * Токены строки как Stream
+     * @param text - текст
+     * @return поток токенов
+     * @see #tokens(char[])
+     */
+    public Stream<TokenRecord> tokens(String text) {
+        return tokens(text.toCharArray());
+    }
+
+    /**
+     * id токенов массива символов как IntStream, делится так же как tokens(char[])
+     * @param text - текст
+     * @return поток id токенов
+     */
+    public IntStream tokenIds(char[] text) {
+        return TokenSpliterator.ids(cursor(text));
+    }
+
+    private TokenSpliterator.Cursor cursor(char[] text) {
+        Tokenizer tokenizer = rules.newTokenizer();
+        tokenizer.setSkip(skipTypes, skipIds);
+        tokenizer.openChars(text, text.length);
+        try {
+            tokenizer.start();
+        }
+        catch (IOException e) {
+            // чтение массива в памяти не выполняет ввод-вывод
+            throw new UncheckedIOException(e);
+        }
+        return new TokenSpliterator.Cursor(tokenizer, text, this, text.length);
+    }
+
+    /**
+     * Разбор файла, отображенного в память. Смещения токенов в байтах, как у Tokenizer.openMappedFile.
+     * Файлы в кодировках отличных от UTF-8, ISO-8859-1 и US-ASCII читаются в память целиком
+     * @param path - путь к файлу
+     * @param charset - кодировка файла
+     * @param sink - получатель пакетов токенов, вызывается в потоке вызова в порядке текста
+     * @return количество токенов
+     * @throws IOException
+     */
+    public long tokenizeFile(Path path, Charset charset, Consumer<TokenBatch> sink) throws IOException {
+        boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+        if (!utf8 && !StandardCharsets.ISO_8859_1.equals(charset) && !StandardCharsets.US_ASCII.equals(charset)) {
+            return tokenize(new String(Files.readAllBytes(path), charset).toCharArray(), sink);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Run(new MappedInput(channel, utf8), sink, chunkSize).run();
+        }
+    }
+
+    /**
+     * Поиск верных состояний разбора на границах кусков текста. Куски разбираются и склеиваются
+     * как в tokenize, но токены не сохраняются: в памяти только куски в работе и список состояний
+     * @param text - текст
+     * @return куски текста по порядку
+     * @throws IOException
+     */
+    ArrayList<Segment> segments(char[] text) throws IOException {
+        long size = text.length / ((long) pool.getParallelism() * SEGMENTS_PER_THREAD);
+        Run run = new Run(new CharInput(text), batch -> { }, (int) Math.max(MIN_SEGMENT_SIZE, Math.min(chunkSize, size)));
+        run.segments = new ArrayList<>();
+        run.run();
+        return run.segments;
+    }
+
+    /**
+     * Токенайзер, готовый выдать первый токен куска
+     * @param text - текст, по которому найдены куски
+     * @param segment - кусок
+     * @return токенайзер
+     * @throws IOException
+     */
+    Tokenizer open(char[] text, Segment segment) throws IOException {
+        Tokenizer tokenizer = newTokenizer(new CharInput(text));
+        if (segment.start == null) {
+            tokenizer.start();
+        }
+        else {
+            tokenizer.restoreState(segment.start);
+        }
+        return tokenizer;
+    }
+
+    /**
+     * Новый токенайзер для разбора входного текста
+     * @param input - входной текст
+     * @return токенайзер без начального состояния
+     * @throws IOException
+     */
+    private Tokenizer newTokenizer(Input input) throws IOException {
+        Tokenizer tokenizer = rules.newTokenizer();
+        tokenizer.setSkip(skipTypes, skipIds);
+        input.open(tokenizer);
+        return tokenizer;
+    }
+
+    /**
+     * Разбор куска. Выполняется в пуле. Разбор продолжается за концом куска до первого токена,
+     * начинающегося после конца, чтобы дочитать токены, пересекающие границу
+     * @param input - входной текст
+     * @param chunk - кусок
+     * @return кусок с токенами
+     * @throws IOException
+     */
+    private Chunk lex(Input input, Chunk chunk) throws IOException {
+        chunk.lineBreaks = input.countLineBreaks(chunk.from, chunk.to);
+        Tokenizer tokenizer = newTokenizer(input);
+        if (chunk.from == 0) {
+            tokenizer.start();
+        }
+        else {
+            tokenizer.startAt(chunk.from);
+        }
+        LexerState before = new LexerState();
+        int n = 0;
+        while (true) {
+            tokenizer.saveState(before);
+            if (n < SYNC_DENSE || n % SYNC_STEP == 0) {
+                chunk.addSync(before.copy(), n);
+            }
+            int id = tokenizer.advance();
+            if (id < 0 || tokenizer.curTokenOffset() >= chunk.to) {
+                break;
+            }
+            chunk.add(tokenizer, id);
+            n++;
+        }
+        chunk.end = before;
+        return chunk;
+    }
+
+    /**
+     * Один проход разбора: отправка кусков в пул и склейка результатов
+     */
+    private final class Run {
+        private final Input input;
+        private final Consumer<TokenBatch> sink;
+        private final int chunkLength;
+        // куски в работе, в порядке текста
+        private final ArrayDeque<ForkJoinTask<Chunk>> queue = new ArrayDeque<>();
+        // верное состояние разбора после последнего выданного токена
+        private LexerState carry;
+        // сдвиг номеров строк: переводы строк до начала очередного куска и лишняя строка,
+        // которую Tokenizer.start() добавляет при переводе строки в начале текста
+        private long lineBase;
+        private long count;
+        // склеенные куски с начальными состояниями, если нужны
+        ArrayList<Segment> segments;
+
+        Run(Input input, Consumer<TokenBatch> sink, int chunkLength) {
+            this.input = input;
+            this.sink = sink;
+            this.chunkLength = chunkLength;
+        }
+
+        long run() throws IOException {
+            long length = input.length();
+            lineBase = input.startsWithLineBreak() ? 1 : 0;
+            int window = pool.getParallelism() * 2 + 1;
+            long from = 0;
+            boolean first = true;
+            try {
+                while (first || from < length || !queue.isEmpty()) {
+                    while (queue.size() < window && (first || from < length)) {
+                        Chunk chunk = new Chunk(from, input.lineStart(from + chunkLength));
+                        queue.add(pool.submit(() -> lex(input, chunk)));
+                        from = chunk.to;
+                        first = false;
+                    }
+                    LexerState start = carry;
+                    long before = count;
+                    stitch(join(queue.poll()));
+                    if (segments != null) {
+                        segments.add(new Segment(start, count - before));
+                    }
+                }
+            }
+            finally {
+                for (ForkJoinTask<Chunk> task : queue) {
+                    task.cancel(true);
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Ожидание разбора куска
+         * @param task - задача разбора
+         * @return кусок с токенами
+         * @throws IOException
+         */
+        private Chunk join(ForkJoinTask<Chunk> task) throws IOException {
+            try {
+                return task.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Tokenization interrupted");
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+
+        /**
+         * Склейка очередного куска с уже выданными токенами
+         * @param chunk - разобранный кусок
+         * @throws IOException
+         */
+        private void stitch(Chunk chunk) throws IOException {
+            if (chunk.from == 0) {
+                // первый кусок разобран с начала текста, его токены и номера строк верны
+                deliver(chunk, 0, 0);
+                carry = chunk.end;
+                lineBase += chunk.lineBreaks;
+                return;
+            }
+            int lineShift = (int) lineBase;
+            lineBase += chunk.lineBreaks;
+            LexerState current = carry.copy();
+            Tokenizer tokenizer = null;
+            Chunk relexed = null;
+            while (true) {
+                int index = chunk.findSync(current);
+                if (index >= 0) {
+                    if (relexed != null) {
+                        deliver(relexed, 0, 0);
+                    }
+                    deliver(chunk, index, lineShift);
+                    carry = chunk.end.shiftLines(lineShift);
+                    return;
+                }
+                if (tokenizer == null) {
+                    tokenizer = newTokenizer(input);
+                    tokenizer.restoreState(current);
+                    relexed = new Chunk(chunk.from, chunk.to);
+                }
+                int id = tokenizer.advance();
+                if (id < 0 || tokenizer.curTokenOffset() >= chunk.to) {
+                    break;
+                }
+                relexed.add(tokenizer, id);
+                tokenizer.saveState(current);
+            }
+            // состояния не совпали до конца куска, кусок целиком заменен последовательным разбором
+            deliver(relexed, 0, 0);
+            carry = current;
+        }
+
+        /**
+         * Выдача токенов куска получателю
+         * @param chunk - кусок
+         * @param skip - количество пропускаемых первых токенов
+         * @param lineShift - сдвиг номеров строк
+         */
+        private void deliver(Chunk chunk, int skip, int lineShift) {
+            for (TokenBatch batch : chunk.batches) {
+                if (skip >= batch.size) {
+                    skip -= batch.size;
+                    continue;
+                }
+                if (skip > 0) {
+                    batch.removeFirst(skip);
+                    skip = 0;
+                }
+                if (lineShift != 0) {
+                    batch.shiftLines(lineShift);
+                }
+                count += batch.size;
+                sink.accept(batch);
+            }
+        }
+    }
+
+    /**
+     * Склеенный кусок текста: верное состояние разбора перед первым токеном куска и количество его токенов
+     */
+    static final class Segment {
+        // состояние разбора, null для начала текста
+        final LexerState start;
+        final long count;
+
+        Segment(LexerState start, long count) {
+            this.start = start;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Кусок текста и его токены
+     */
+    private static final class Chunk {
+        // границы куска, кусок владеет токенами, начинающимися в [from, to)
+        final long from;
+        final long to;
+        // количество переводов строк в куске
+        long lineBreaks;
+        final ArrayList<TokenBatch> batches = new ArrayList<>();
+        private TokenBatch last;
+        // состояния разбора перед токенами с номерами syncToken, по возрастанию смещения
+        private LexerState[] syncState = new LexerState[SYNC_DENSE];
+        private int[] syncToken = new int[SYNC_DENSE];
+        private int syncCount;
+        // состояние разбора после последнего токена куска
+        LexerState end;
+
+        Chunk(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Добавление текущего токена токенайзера
+         * @param tokenizer - токенайзер
+         * @param id - id токена
+         */
+        void add(Tokenizer tokenizer, int id) {
+            if (last == null || last.size == last.capacity()) {
+                last = new TokenBatch(BATCH_SIZE);
+                batches.add(last);
+            }
+            tokenizer.putToken(last, last.size++, id, 0);
+        }
+
+        /**
+         * Запоминание состояния разбора перед токеном
+         * @param state - состояние
+         * @param token - номер токена в куске
+         */
+        void addSync(LexerState state, int token) {
+            if (syncCount == syncState.length) {
+                syncState = Arrays.copyOf(syncState, syncCount * 2);
+                syncToken = Arrays.copyOf(syncToken, syncCount * 2);
+            }
+            syncState[syncCount] = state;
+            syncToken[syncCount++] = token;
+        }
+
+        /**
+         * Поиск запомненного состояния, равного заданному
+         * @param state - состояние разбора
+         * @return номер токена, с которого токены куска верны, или -1
+         */
+        int findSync(LexerState state) {
+            int low = 0;
+            int high = syncCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (syncState[mid].offset < state.offset) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < syncCount && syncState[i].offset == state.offset; i++) {
+                if (syncState[i].sameLexer(state)) {
+                    return syncToken[i];
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Входной текст, общий для всех задач разбора
+     */
+    private interface Input {
+        long length();
+
+        /**
+         * Начало строки после первого перевода строки не раньше from
+         * @param from - смещение
+         * @return смещение начала строки или длина текста
+         * @throws IOException
+         */
+        long lineStart(long from) throws IOException;
+
+        long countLineBreaks(long from, long to) throws IOException;
+
+        boolean startsWithLineBreak() throws IOException;
+
+        void open(Tokenizer tokenizer) throws IOException;
+    }
+
+    /**
+     * Текст в массиве символов
+     */
+    private static final class CharInput implements Input {
+        private final char[] text;
+
+        CharInput(char[] text) {
+            this.text = text;
+        }
+
+        @Override
+        public long length() {
+            return text.length;
+        }
+
+        @Override
+        public long lineStart(long from) {
+            for (long i = from; i < text.length; i++) {
+                if (text[(int) i] == '\n') {
+                    return i + 1;
+                }
+            }
+            return text.length;
+        }
+
+        @Override
+        public long countLineBreaks(long from, long to) {
+            long count = 0;
+            for (int i = (int) from; i < to; i++) {
+                if (text[i] == '\n') {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public boolean startsWithLineBreak() {
+            return text.length > 0 && text[0] == '\n';
+        }
+
+        @Override
+        public void open(Tokenizer tokenizer) {
+            tokenizer.openChars(text, text.length);
+        }
+    }
+
+    /**
+     * Файл, отображенный в память. Перевод строки - один байт во всех поддерживаемых кодировках
+     * и не встречается внутри многобайтовых последовательностей utf-8
+     */
+    private static final class MappedInput implements Input {
+        private final FileChannel channel;
+        private final long size;
+        private final boolean utf8;
+
+        MappedInput(FileChannel channel, boolean utf8) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.utf8 = utf8;
+        }
+
+        @Override
+        public long length() {
+            return size;
+        }
+
+        @Override
+        public long lineStart(long from) throws IOException {
+            for (long pos = from; pos < size; ) {
+                int length = (int) Math.min(SCAN_WINDOW, size - pos);
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+                for (int i = 0; i < length; i++) {
+                    if (bytes.get(i) == '\n') {
+                        return pos + i + 1;
+                    }
+                }
+                pos += length;
+            }
+            return size;
+        }
+
+        @Override
+        public long countLineBreaks(long from, long to) throws IOException {
+            long count = 0;
+            for (long pos = from; pos < to; ) {
+                int length = (int) Math.min(Tokenizer.MAP_WINDOW, to - pos);
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+                for (int i = 0; i < length; i++) {
+                    if (bytes.get(i) == '\n') {
+                        count++;
+                    }
+                }
+                pos += length;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean startsWithLineBreak() throws IOException {
+            return size > 0 && channel.map(FileChannel.MapMode.READ_ONLY, 0, 1).get(0) == '\n';
+        }
+
+        @Override
+        public void open(Tokenizer tokenizer) throws IOException {
+            tokenizer.openMapped(channel, utf8);
+        }
+    }
+}
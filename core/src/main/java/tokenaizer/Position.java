@@ -0,0 +1,42 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+/**
+ * Позиция в тексте: номер строки и позиция в строке
+ */
+class Position {
+    int line;
+    int col;
+
+    Position(int line, int col) {
+        this.line = line;
+        this.col = col;
+    }
+    public void setPos(Position position) {
+        this.line=position.line;
+        this.col=position.col;
+    }
+    public void setPosXY(int line, int col) {
+        this.line=line;
+        this.col=col;
+    }
+}
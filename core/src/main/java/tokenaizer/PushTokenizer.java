@@ -0,0 +1,223 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Разбор текста, который поступает кусками без блокировки потока: куски передаются в feed(),
+ * конец текста - вызовом endOfInput(). Законченные токены выдаются слушателю во время этих вызовов.
+ * Если кусок заканчивается внутри токена, литерала, коментария или заглядывания вперед, разбор
+ * останавливается на чтении символа и продолжается с того же места при поступлении следующего куска,
+ * прочитанный текст повторно не разбирается. Незаконченные токены хранятся в буфере токенайзера,
+ * переданный кусок после возврата из feed() не используется.
+ * Один поток может обслуживать любое количество объектов, каждый объект не потокобезопасен.
+ * </p>Пример использования: <pre>
+ *    PushTokenizer push = new PushTokenizer(rules, (id, type, text, offset, line, col) ->
+ *            System.out.println(type + ":" + text));
+ *    // при готовности данных канала
+ *    push.feed(charBuffer);
+ *    // при закрытии канала
+ *    push.endOfInput();
+ * </pre>
+ * @see Tokenizer
+ */
+public class PushTokenizer {
+    private static final InputPending PENDING = new InputPending();
+
+    private final Tokenizer tokenizer;
+    private final Listener listener;
+    private final Input input = new Input();
+    private boolean started;
+    // разбор остановлен на чтении символа внутри токенайзера
+    private boolean suspended;
+    private boolean finished;
+
+    /**
+     * Получатель токенов
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Очередной законченный токен
+         * @param id - id токена
+         * @param type - тип токена
+         * @param text - текст токена, действителен только во время вызова
+         * @param offset - смещение начала токена в символах от начала текста
+         * @param line - номер строки
+         * @param col - позиция в строке
+         */
+        void token(int id, TokenType type, CharSequence text, long offset, int line, int col);
+    }
+
+    /**
+     * Конструктор
+     * @param rules - скомпилированные правила
+     * @param listener - получатель токенов
+     */
+    public PushTokenizer(CompiledRules rules, Listener listener) {
+        this.tokenizer = rules.newTokenizer();
+        this.listener = listener;
+    }
+
+    /**
+     * возвращать/невозвращать токены разделители слов. Задается до первого куска текста
+     * @param skipSpace логический тип
+     * @return токенайзер
+     */
+    public PushTokenizer setSkipSpace(boolean skipSpace) {
+        tokenizer.setSkipSpace(skipSpace);
+        return this;
+    }
+
+    /**
+     * Очередной кусок текста
+     * @param chunk - символы
+     * @throws IOException
+     */
+    public void feed(char[] chunk) throws IOException {
+        feed(CharBuffer.wrap(chunk));
+    }
+
+    /**
+     * Очередной кусок текста
+     * @param chunk - символы
+     * @param offset - индекс первого символа куска
+     * @param length - количество символов
+     * @throws IOException
+     */
+    public void feed(char[] chunk, int offset, int length) throws IOException {
+        feed(CharBuffer.wrap(chunk, offset, length));
+    }
+
+    /**
+     * Очередной кусок текста. Символы читаются от позиции до границы буфера, позиция сдвигается на границу
+     * @param chunk - символы
+     * @throws IOException
+     */
+    public void feed(CharBuffer chunk) throws IOException {
+        if (finished || input.ended) {
+            throw new IllegalStateException("feed after endOfInput");
+        }
+        if (!chunk.hasRemaining()) {
+            return;
+        }
+        input.chunk = chunk;
+        try {
+            run();
+        }
+        finally {
+            input.chunk = null;
+        }
+    }
+
+    /**
+     * Конец текста: выдача последних токенов
+     * @throws IOException
+     */
+    public void endOfInput() throws IOException {
+        if (finished) {
+            return;
+        }
+        input.ended = true;
+        run();
+    }
+
+    /**
+     * Закончен ли разбор
+     * @return true после endOfInput()
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Разбор доступных символов до их окончания или до конца текста
+     * @throws IOException
+     */
+    private void run() throws IOException {
+        try {
+            int id;
+            if (!started) {
+                started = true;
+                tokenizer.setReader(input);
+                id = tokenizer.advance();
+            }
+            else if (suspended) {
+                suspended = false;
+                id = tokenizer.resume();
+            }
+            else {
+                id = tokenizer.advance();
+            }
+            while (id >= 0) {
+                listener.token(id, tokenizer.curTokenType(), tokenizer.curTokenText(), tokenizer.curTokenOffset(),
+                        tokenizer.curLine(), tokenizer.curPos());
+                id = tokenizer.advance();
+            }
+            finished = true;
+            tokenizer.reset();
+        }
+        catch (InputPending e) {
+            suspended = true;
+        }
+    }
+
+    /**
+     * Поток символов текущего куска. Когда кусок прочитан, а конец текста еще не наступил,
+     * чтение прерывается исключением InputPending
+     */
+    private static final class Input extends Reader {
+        CharBuffer chunk;
+        boolean ended;
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (chunk != null && chunk.hasRemaining()) {
+                int n = Math.min(len, chunk.remaining());
+                chunk.get(cbuf, off, n);
+                return n;
+            }
+            if (ended) {
+                return -1;
+            }
+            throw PENDING;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Прерывание разбора до поступления следующего куска. Один объект без стека вызовов
+     */
+    private static final class InputPending extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * Кеш скомпилированных правил по отпечатку набора правил. Вытеснение давно не использованных правил
+ * при превышении количества записей или оценки занимаемой памяти. Одновременные запросы одного
+ * отпечатка компилируют правила один раз, остальные потоки ждут результата.
+ * Для общего кеша процесса используется RulesCache.shared().
+ * </p>Пример использования: <pre>
+ *    Tokenizer tokenizer = TokenizerFactory.create()
+ *                  .addKeyword(new String[] {"begin"})
+ *                  .setCache(RulesCache.shared())
+ *                  .newTokenizer();
+ * </pre>
+ * @see RulesFingerprint
+ */
+public final class RulesCache {
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    private static final RulesCache SHARED = new RulesCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+
+    private final int maxEntries;
+    private final long maxBytes;
+    // записи в порядке обращения, первая - давно не использованная. Доступ под блокировкой this
+    private final LinkedHashMap<RulesFingerprint, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Общий кеш процесса
+     * @return кеш
+     */
+    public static RulesCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Конструктор
+     * @param maxEntries - максимальное количество правил в кеше
+     * @param maxBytes - максимальная оценка памяти таблиц правил в байтах
+     */
+    public RulesCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache limits must be positive: " + maxEntries + ", " + maxBytes);
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Получение правил из кеша или компиляция при отсутствии. Компиляция выполняется в вызывающем
+     * потоке первого запроса, одновременные запросы того же отпечатка ждут ее окончания.
+     * Ошибка компиляции передается всем ожидающим, в кеше правила не остаются
+     * @param key - отпечаток правил
+     * @param compiler - компиляция правил
+     * @return скомпилированные правила
+     */
+    public CompiledRules get(RulesFingerprint key, Supplier<CompiledRules> compiler) {
+        Entry entry;
+        boolean owner = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(compiler);
+                entries.put(key, entry);
+                missCount++;
+                owner = true;
+            }
+            else {
+                hitCount++;
+            }
+        }
+        if (owner) {
+            entry.task.run();
+        }
+        CompiledRules rules;
+        try {
+            rules = entry.task.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for rules compilation");
+        }
+        catch (ExecutionException e) {
+            synchronized (this) {
+                entries.remove(key, entry);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        if (owner) {
+            synchronized (this) {
+                if (entries.get(key) == entry) {
+                    entry.bytes = rules.memorySize();
+                    bytes += entry.bytes;
+                    evict();
+                }
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Получение правил из кеша без компиляции
+     * @param key - отпечаток правил
+     * @return правила или null, если их нет в кеше или они еще компилируются
+     */
+    public synchronized CompiledRules getIfPresent(RulesFingerprint key) {
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.task.isDone()) {
+            return null;
+        }
+        try {
+            return entry.task.get();
+        }
+        catch (InterruptedException | ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Вытеснение давно не использованных правил до соблюдения ограничений. Компилируемые правила не вытесняются
+     */
+    private void evict() {
+        Iterator<Map.Entry<RulesFingerprint, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (!entry.task.isDone()) {
+                continue;
+            }
+            iterator.remove();
+            bytes -= entry.bytes;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Очистка кеша, статистика сохраняется
+     */
+    public synchronized void invalidateAll() {
+        entries.values().removeIf(entry -> entry.task.isDone());
+        bytes = 0;
+        for (Entry entry : entries.values()) {
+            bytes += entry.bytes;
+        }
+    }
+
+    /**
+     * Количество правил в кеше
+     * @return количество
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Оценка памяти таблиц правил в кеше
+     * @return байт
+     */
+    public synchronized long memorySize() {
+        return bytes;
+    }
+
+    /**
+     * Количество запросов, найденных в кеше
+     * @return количество
+     */
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Количество запросов с компиляцией правил
+     * @return количество
+     */
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    /**
+     * Количество вытесненных правил
+     * @return количество
+     */
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RulesCache{size=" + entries.size() + ", bytes=" + bytes + ", hits=" + hitCount
+                + ", misses=" + missCount + ", evictions=" + evictionCount + "}";
+    }
+
+    /**
+     * Запись кеша: компиляция правил и оценка их памяти
+     */
+    private static final class Entry {
+        final FutureTask<CompiledRules> task;
+        long bytes;
+
+        Entry(Supplier<CompiledRules> compiler) {
+            this.task = new FutureTask<>(compiler::get);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Отпечаток набора правил фабрики: SHA-256 от ключевых слов, коментариев, литералов, разделителей
+ * и признака ignoreCase. Правила учитываются в порядке добавления, потому что от порядка зависят id токенов.
+ * В отпечаток входит версия компилятора правил, при изменении алгоритма компиляции отпечатки меняются
+ * @see RulesCache
+ */
+public final class RulesFingerprint {
+    // версия алгоритма компиляции правил
+    static final int COMPILER_VERSION = 1;
+    private final byte[] digest;
+    private final int hash;
+
+    RulesFingerprint(byte[] digest) {
+        this.digest = digest;
+        this.hash = Arrays.hashCode(digest);
+    }
+
+    /**
+     * Байты отпечатка
+     * @return копия SHA-256
+     */
+    public byte[] toBytes() {
+        return digest.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RulesFingerprint && Arrays.equals(digest, ((RulesFingerprint) o).digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Отпечаток в шестнадцатеричном виде
+     * @return строка
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Накопление правил в каноническом виде: вид правила и строки с длинами
+     */
+    static final class Builder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        /**
+         * Добавление правила
+         * @param kind - вид правила
+         * @param values - строки правила, допускается null
+         */
+        void add(char kind, String... values) {
+            try {
+                out.writeChar(kind);
+                out.writeInt(values.length);
+                for (String value : values) {
+                    if (value == null) {
+                        out.writeInt(-1);
+                    }
+                    else {
+                        out.writeInt(value.length());
+                        out.writeChars(value);
+                    }
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Вычисление отпечатка накопленных правил
+         * @param ignoreCase - признак ignoreCase фабрики
+         * @return отпечаток
+         */
+        RulesFingerprint build(boolean ignoreCase) {
+            try {
+                MessageDigest sha = MessageDigest.getInstance("SHA-256");
+                sha.update((byte) COMPILER_VERSION);
+                sha.update(bytes.toByteArray());
+                sha.update((byte) (ignoreCase ? 1 : 0));
+                return new RulesFingerprint(sha.digest());
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Таблица переходов конечного автомата в плоском виде: строка состояния state начинается с индекса
+ * state*alfabetSize. Ширина ячейки выбирается по количеству состояний: byte до 256 состояний,
+ * short до 65536, иначе int. Значения ячеек хранятся без знака.
+ * В json таблица записывается массивом строк, как раньше int[][]
+ */
+final class StateTable {
+    // количество состояний
+    final int stateCount;
+    // размер внутреннего алфавита, длина строки таблицы
+    final int alfabetSize;
+    // заполнен ровно один из массивов, в зависимости от ширины ячейки
+    final byte[] table8;
+    final short[] table16;
+    final int[] table32;
+
+    /**
+     * Конструктор
+     * @param cells - переходы всех состояний подряд, строка за строкой
+     * @param stateCount - количество состояний
+     * @param alfabetSize - размер внутреннего алфавита
+     */
+    StateTable(int[] cells, int stateCount, int alfabetSize) {
+        if (cells.length != stateCount * alfabetSize) {
+            throw new IllegalArgumentException("Table size " + cells.length + " != " + stateCount + "*" + alfabetSize);
+        }
+        this.stateCount = stateCount;
+        this.alfabetSize = alfabetSize;
+        for (int cell : cells) {
+            if (cell < 0 || cell >= stateCount) {
+                throw new IllegalArgumentException("State out of range: " + cell);
+            }
+        }
+        if (stateCount <= 0x100) {
+            table8 = new byte[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                table8[i] = (byte) cells[i];
+            }
+            table16 = null;
+            table32 = null;
+        }
+        else if (stateCount <= 0x10000) {
+            table16 = new short[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                table16[i] = (short) cells[i];
+            }
+            table8 = null;
+            table32 = null;
+        }
+        else {
+            table32 = cells.clone();
+            table8 = null;
+            table16 = null;
+        }
+    }
+
+    private StateTable(byte[] table8, short[] table16, int[] table32, int stateCount, int alfabetSize) {
+        int length = table8 != null ? table8.length : table16 != null ? table16.length : table32.length;
+        if (length != stateCount * alfabetSize) {
+            throw new IllegalArgumentException("Table size " + length + " != " + stateCount + "*" + alfabetSize);
+        }
+        for (int i = 0; i < length; i++) {
+            int cell = table8 != null ? table8[i] & 0xFF : table16 != null ? table16[i] & 0xFFFF : table32[i];
+            if (cell < 0 || cell >= stateCount) {
+                throw new IllegalArgumentException("State out of range: " + cell);
+            }
+        }
+        this.stateCount = stateCount;
+        this.alfabetSize = alfabetSize;
+        this.table8 = table8;
+        this.table16 = table16;
+        this.table32 = table32;
+    }
+
+    /**
+     * Таблица с однобайтовыми ячейками над готовым массивом, массив не копируется
+     * @param table8 - переходы всех состояний подряд, значения без знака
+     * @param stateCount - количество состояний
+     * @param alfabetSize - размер внутреннего алфавита
+     * @return таблица переходов
+     */
+    static StateTable wrap(byte[] table8, int stateCount, int alfabetSize) {
+        return new StateTable(table8, null, null, stateCount, alfabetSize);
+    }
+
+    /**
+     * Таблица с двухбайтовыми ячейками над готовым массивом, массив не копируется
+     * @param table16 - переходы всех состояний подряд, значения без знака
+     * @param stateCount - количество состояний
+     * @param alfabetSize - размер внутреннего алфавита
+     * @return таблица переходов
+     */
+    static StateTable wrap(short[] table16, int stateCount, int alfabetSize) {
+        return new StateTable(null, table16, null, stateCount, alfabetSize);
+    }
+
+    /**
+     * Таблица с четырехбайтовыми ячейками над готовым массивом, массив не копируется
+     * @param table32 - переходы всех состояний подряд
+     * @param stateCount - количество состояний
+     * @param alfabetSize - размер внутреннего алфавита
+     * @return таблица переходов
+     */
+    static StateTable wrap(int[] table32, int stateCount, int alfabetSize) {
+        return new StateTable(null, null, table32, stateCount, alfabetSize);
+    }
+
+    /**
+     * Создание таблицы из массива строк
+     * @param rows - строки таблицы переходов, по строке на состояние
+     * @return таблица переходов
+     */
+    static StateTable of(int[][] rows) {
+        int alfabetSize = rows.length == 0 ? 0 : rows[0].length;
+        int[] cells = new int[rows.length * alfabetSize];
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i].length != alfabetSize) {
+                throw new IllegalArgumentException("Row " + i + " length " + rows[i].length + " != " + alfabetSize);
+            }
+            System.arraycopy(rows[i], 0, cells, i * alfabetSize, alfabetSize);
+        }
+        return new StateTable(cells, rows.length, alfabetSize);
+    }
+
+    /**
+     * Переход из состояния по символу алфавита
+     * @param state - состояние
+     * @param abChar - символ внутреннего алфавита
+     * @return новое состояние
+     */
+    int get(int state, int abChar) {
+        int index = state * alfabetSize + abChar;
+        if (table8 != null) {
+            return table8[index] & 0xFF;
+        }
+        if (table16 != null) {
+            return table16[index] & 0xFFFF;
+        }
+        return table32[index];
+    }
+
+    /**
+     * Размер ячейки таблицы
+     * @return количество байт на ячейку
+     */
+    int cellBytes() {
+        return table8 != null ? 1 : table16 != null ? 2 : 4;
+    }
+
+    /**
+     * Таблица в виде плоского массива int
+     * @return переходы всех состояний подряд, строка за строкой
+     */
+    int[] toCells() {
+        int[] cells = new int[stateCount * alfabetSize];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = table8 != null ? table8[i] & 0xFF : table16 != null ? table16[i] & 0xFFFF : table32[i];
+        }
+        return cells;
+    }
+
+    /**
+     * Таблица в виде массива строк
+     * @return строки таблицы переходов
+     */
+    int[][] toRows() {
+        int[][] rows = new int[stateCount][alfabetSize];
+        for (int i = 0; i < stateCount; i++) {
+            for (int j = 0; j < alfabetSize; j++) {
+                rows[i][j] = get(i, j);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Запись и чтение таблицы в json в виде массива строк
+     */
+    static class GsonAdapter extends TypeAdapter<StateTable> {
+        @Override
+        public void write(JsonWriter out, StateTable table) throws IOException {
+            if (table == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (int i = 0; i < table.stateCount; i++) {
+                out.beginArray();
+                for (int j = 0; j < table.alfabetSize; j++) {
+                    out.value(table.get(i, j));
+                }
+                out.endArray();
+            }
+            out.endArray();
+        }
+
+        @Override
+        public StateTable read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            ArrayList<int[]> rows = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                ArrayList<Integer> row = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    row.add(in.nextInt());
+                }
+                in.endArray();
+                int[] cells = new int[row.size()];
+                for (int j = 0; j < cells.length; j++) {
+                    cells[j] = row.get(j);
+                }
+                rows.add(cells);
+            }
+            in.endArray();
+            return of(rows.toArray(new int[0][]));
+        }
+    }
+}
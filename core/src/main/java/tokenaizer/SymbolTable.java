@@ -0,0 +1,244 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.util.Arrays;
+
+/**
+ * Таблица символов: плотная нумерация различных текстов слов с 0. Хранится в примитивных массивах
+ * с открытой адресацией, поиск текста из буфера токенайзера не создает строк, строка символа создается
+ * один раз при его первом появлении. Таблица не потокобезопасна, одну таблицу используют токенайзеры
+ * одного потока.
+ * </p>Пример использования: <pre>
+ *    SymbolTable symbols = new SymbolTable();
+ *    tokenizer.setSymbolTable(symbols);
+ *    while (tokenizer.advance() >= 0) {
+ *        int symbol = tokenizer.curSymbol();
+ *        if (symbol >= 0) {
+ *            ...
+ *        }
+ *    }
+ * </pre>
+ * @see Tokenizer#setSymbolTable(SymbolTable)
+ */
+public final class SymbolTable {
+    // строки символов по id
+    private String[] symbols;
+    // хеши символов по id
+    private int[] hashes;
+    // слоты открытой адресации: id символа + 1, 0 - пустой слот
+    private int[] slots;
+    private int mask;
+    // количество символов
+    private int size;
+
+    /**
+     * Конструктор
+     */
+    public SymbolTable() {
+        this(256);
+    }
+
+    /**
+     * Конструктор
+     * @param capacity - ожидаемое количество символов
+     */
+    public SymbolTable(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+        }
+        int slotCount = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) << 1;
+        slots = new int[slotCount];
+        mask = slotCount - 1;
+        symbols = new String[slotCount / 2];
+        hashes = new int[slotCount / 2];
+    }
+
+    /**
+     * Количество символов
+     * @return количество символов
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Строка символа по id
+     * @param id - id символа
+     * @return строка символа
+     */
+    public String symbol(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("symbol " + id + ", size " + size);
+        }
+        return symbols[id];
+    }
+
+    /**
+     * Id символа с добавлением нового
+     * @param text - текст символа
+     * @return id символа
+     */
+    public int add(CharSequence text) {
+        return add(text, 0, text.length());
+    }
+
+    /**
+     * Id символа без добавления
+     * @param text - текст символа
+     * @return id символа или -1 если символа нет в таблице
+     */
+    public int find(CharSequence text) {
+        int hash = hash(text, 0, text.length());
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && symbols[id].contentEquals(text)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Id символа для части массива символов с добавлением нового
+     * @param chars - массив символов
+     * @param from - индекс начала текста
+     * @param length - длина текста
+     * @return id символа
+     */
+    int add(char[] chars, int from, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[from + i];
+        }
+        int slot = spread(hash) & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && same(symbols[id], chars, from, length)) {
+                return id;
+            }
+        }
+        return insert(slot, hash, new String(chars, from, length));
+    }
+
+    /**
+     * Id символа для части текста с добавлением нового
+     * @param text - текст
+     * @param from - индекс начала символа
+     * @param length - длина символа
+     * @return id символа
+     */
+    int add(CharSequence text, int from, int length) {
+        int hash = hash(text, from, length);
+        int slot = spread(hash) & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && same(symbols[id], text, from, length)) {
+                return id;
+            }
+        }
+        return insert(slot, hash, text.subSequence(from, from + length).toString());
+    }
+
+    /**
+     * Добавление нового символа в свободный слот
+     * @param slot - свободный слот
+     * @param hash - хеш символа
+     * @param symbol - строка символа
+     * @return id символа
+     */
+    private int insert(int slot, int hash, String symbol) {
+        int id = size++;
+        symbols[id] = symbol;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (size * 2 > mask) {
+            grow();
+        }
+        return id;
+    }
+
+    /**
+     * Удвоение таблицы слотов и массивов символов
+     */
+    private void grow() {
+        int slotCount = slots.length * 2;
+        slots = new int[slotCount];
+        mask = slotCount - 1;
+        symbols = Arrays.copyOf(symbols, slotCount / 2);
+        hashes = Arrays.copyOf(hashes, slotCount / 2);
+        for (int id = 0; id < size; id++) {
+            int slot = spread(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Хеш текста, совпадает с String.hashCode()
+     * @param text - текст
+     * @param from - индекс начала
+     * @param length - длина
+     * @return хеш
+     */
+    private static int hash(CharSequence text, int from, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + text.charAt(from + i);
+        }
+        return hash;
+    }
+
+    /**
+     * Перемешивание старших бит хеша в младшие, по которым выбирается слот
+     * @param hash - хеш
+     * @return перемешанный хеш
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean same(String symbol, char[] chars, int from, int length) {
+        if (symbol.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != chars[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean same(String symbol, CharSequence text, int from, int length) {
+        if (symbol.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != text.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+/**
+ * Токен хранится как диапазон входного потока: смещение начала и длина в символах.
+ * Текст токенов всегда непрерывен, поэтому объединение токенов только увеличивает длину
+ */
+class Token {
+    Position pos;
+    int state;
+    // смещение начала текста токена от начала потока
+    long start;
+    // смещение начала текста токена в символах, отличается от start для байтового ввода
+    long charStart;
+    // длина текста токена в символах
+    int length;
+
+    Token() {
+        pos = new Position(0,0);
+        state=Const.RS_FINISH;
+    }
+    public boolean isEmpty() {
+        return length==0;
+    }
+    public void setStart(long start, long charStart) {
+        this.start=start;
+        this.charStart=charStart;
+        length=0;
+        state=Const.RS_FINISH;
+    }
+    public void setStartToken(Position pos, long start, long charStart) {
+        this.pos.setPos(pos);
+        this.start=start;
+        this.charStart=charStart;
+        length=0;
+        state=Const.RS_FINISH;
+    }
+    public void append(char ch) {
+        length++;
+    }
+    public void setState(int state) {
+        this.state=state;
+    }
+    public void setToken(Token token) {
+        pos.setPos(token.pos);
+        if (length==0) {
+            start=token.start;
+            charStart=token.charStart;
+        }
+        length+=token.length;
+        state=token.state;
+    }
+    public void addToken(Token token) {
+        if (length==0) {
+            start=token.start;
+            charStart=token.charStart;
+        }
+        length+=token.length;
+        state=token.state;
+    }
+}
@@ -0,0 +1,151 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+/**
+ * Пакет токенов в виде параллельных массивов примитивов. Заполняется вызовом Tokenizer.nextTokens,
+ * i-й токен пакета описывается i-ми элементами массивов. Объект переиспользуется между вызовами,
+ * массивы создаются один раз в конструкторе.
+ * </p>Пример использования: <pre>
+ *    TokenBatch batch = new TokenBatch(1024);
+ *    while (tokenizer.nextTokens(batch) > 0) {
+ *        for (int i = 0; i < batch.size(); i++) {
+ *            System.out.println(batch.id[i] + ":" + batch.getType(i) + " line=" + batch.line[i]);
+ *        }
+ *    }
+ * </pre>
+ * @see Tokenizer#nextTokens(TokenBatch)
+ */
+public class TokenBatch {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    // байт на токен во всех массивах пакета
+    static final int SLOT_BYTES = 4 + 1 + 8 + 4 + 4 + 4;
+    // заголовки шести массивов
+    private static final int ARRAYS_OVERHEAD = 6 * 16;
+
+    // id токена
+    public final int[] id;
+    // порядковый номер типа токена TokenType.ordinal()
+    public final byte[] type;
+    // смещение начала токена от начала потока
+    public final long[] offset;
+    // длина токена в символах
+    public final int[] length;
+    // строка начала токена
+    public final int[] line;
+    // позиция начала токена в строке
+    public final int[] col;
+    // количество заполненных токенов
+    int size;
+
+    /**
+     * Конструктор
+     * @param capacity - максимальное количество токенов в пакете
+     */
+    public TokenBatch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        id = new int[capacity];
+        type = new byte[capacity];
+        offset = new long[capacity];
+        length = new int[capacity];
+        line = new int[capacity];
+        col = new int[capacity];
+    }
+
+    /**
+     * Количество токенов в пакете
+     * @return количество токенов
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Максимальное количество токенов в пакете
+     * @return емкость пакета
+     */
+    public int capacity() {
+        return id.length;
+    }
+
+    /**
+     * Память массивов пакета
+     * @return количество байт
+     */
+    long memory() {
+        return (long) capacity() * SLOT_BYTES + ARRAYS_OVERHEAD;
+    }
+
+    /**
+     * Пакет с емкостью по количеству токенов
+     * @return этот пакет, если он заполнен, иначе копия токенов в пакете меньшей емкости
+     */
+    TokenBatch trim() {
+        if (size == capacity() || size == 0) {
+            return this;
+        }
+        TokenBatch copy = new TokenBatch(size);
+        System.arraycopy(id, 0, copy.id, 0, size);
+        System.arraycopy(type, 0, copy.type, 0, size);
+        System.arraycopy(offset, 0, copy.offset, 0, size);
+        System.arraycopy(length, 0, copy.length, 0, size);
+        System.arraycopy(line, 0, copy.line, 0, size);
+        System.arraycopy(col, 0, copy.col, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Удаление первых токенов пакета со сдвигом остальных к началу
+     * @param count - количество удаляемых токенов
+     */
+    void removeFirst(int count) {
+        int rest = size - count;
+        System.arraycopy(id, count, id, 0, rest);
+        System.arraycopy(type, count, type, 0, rest);
+        System.arraycopy(offset, count, offset, 0, rest);
+        System.arraycopy(length, count, length, 0, rest);
+        System.arraycopy(line, count, line, 0, rest);
+        System.arraycopy(col, count, col, 0, rest);
+        size = rest;
+    }
+
+    /**
+     * Сдвиг номеров строк всех токенов пакета
+     * @param lineShift - сдвиг номера строки
+     */
+    void shiftLines(int lineShift) {
+        for (int i = 0; i < size; i++) {
+            line[i] += lineShift;
+        }
+    }
+
+    /**
+     * Тип i-го токена пакета
+     * @param i - индекс токена в пакете
+     * @return тип токена
+     */
+    public TokenType getType(int i) {
+        return TOKEN_TYPES[type[i]];
+    }
+}
@@ -0,0 +1,592 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Индекс токенов файла: результат разбора, сохраненный в двоичном файле, чтобы не разбирать
+ * неизмененный файл повторно. Токены хранятся блоками по BLOCK_SIZE, в блоке столбцами:
+ * id, тип, смещение, длина в байтах, длина в символах, строка и позиция в строке. Смещения и строки
+ * записываются разностью с предыдущим токеном, все числа кроме типа - varint.
+ * Смещения токенов в байтах файла, как у Tokenizer.openBytes. Все числа заголовка big-endian:
+ * <pre>
+ *   int    MAGIC
+ *   short  VERSION
+ *   short  0
+ *   byte[32] отпечаток правил CompiledRules.fingerprint()
+ *   byte[32] SHA-256 байт файла
+ *   long   размер файла
+ *   short  длина имени кодировки, байты имени в ASCII
+ *   int    количество id в маске пропуска, маска по 8 id в байте
+ *   int    количество токенов
+ *   int    количество блоков
+ *   блоки: int начало данных блока от начала данных, long смещение первого токена, int строка первого токена
+ *   данные блоков
+ *   int    CRC32C всех предыдущих байт
+ * </pre>
+ * Индекс читается через отображение в память. Индекс действителен, пока не изменились байты файла,
+ * правила, кодировка и пропускаемые токены, см. isValidFor и openOrBuild.
+ * Методы чтения одного токена используют общий буфер декодированного блока и не потокобезопасны,
+ * read(int, TokenBatch) потокобезопасен
+ * </p>Пример использования: <pre>
+ *    TokenIndex index = TokenIndex.openOrBuild(Path.of("a.sql.tki"), Path.of("a.sql"), StandardCharsets.UTF_8, tokenizer);
+ *    TokenBatch batch = new TokenBatch(1024);
+ *    for (int from = 0; from < index.size(); from += batch.size()) {
+ *        index.read(from, batch);
+ *        ...
+ *    }
+ * </pre>
+ */
+public final class TokenIndex {
+    // "TKZI"
+    static final int MAGIC = 0x544B5A49;
+    static final short VERSION = 1;
+    // количество токенов в блоке
+    static final int BLOCK_SIZE = 128;
+    // размер записи каталога блоков
+    static final int BLOCK_ENTRY_SIZE = 16;
+    private static final int DIGEST_SIZE = 32;
+
+    private final Path path;
+    private final ByteBuffer in;
+    private final byte[] rulesDigest;
+    private final byte[] sourceDigest;
+    private final long sourceSize;
+    private final String charsetName;
+    private final boolean[] skipMask;
+    private final int tokenCount;
+    private final int blockCount;
+    // начало каталога блоков и данных блоков
+    private final int directory;
+    private final int data;
+    // декодированный блок для чтения отдельных токенов
+    private int cachedBlock = -1;
+    private final TokenBatch cached = new TokenBatch(BLOCK_SIZE);
+    private final int[] cachedByteLength = new int[BLOCK_SIZE];
+
+    private TokenIndex(Path path, ByteBuffer in) throws IOException {
+        this.path = path;
+        this.in = in;
+        int limit = in.limit() - 4;
+        if (limit < 8 || in.getInt(0) != MAGIC) {
+            throw new IOException("Not a token index file: " + path);
+        }
+        if (in.getShort(4) != VERSION) {
+            throw new IOException("Unsupported token index version " + in.getShort(4) + ": " + path);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(in.duplicate().position(0).limit(limit));
+        if ((int) crc.getValue() != in.getInt(limit)) {
+            throw new IOException("Checksum mismatch: " + path);
+        }
+        try {
+            ByteBuffer header = in.duplicate().position(8);
+            rulesDigest = new byte[DIGEST_SIZE];
+            header.get(rulesDigest);
+            sourceDigest = new byte[DIGEST_SIZE];
+            header.get(sourceDigest);
+            sourceSize = header.getLong();
+            byte[] name = new byte[header.getShort()];
+            header.get(name);
+            charsetName = new String(name, StandardCharsets.US_ASCII);
+            skipMask = new boolean[header.getInt()];
+            byte[] packed = new byte[(skipMask.length + 7) / 8];
+            header.get(packed);
+            for (int i = 0; i < skipMask.length; i++) {
+                skipMask[i] = (packed[i >> 3] & (1 << (i & 7))) != 0;
+            }
+            tokenCount = header.getInt();
+            blockCount = header.getInt();
+            if (tokenCount < 0 || blockCount != (tokenCount + BLOCK_SIZE - 1) / BLOCK_SIZE) {
+                throw new IOException("Bad token count " + tokenCount + ": " + path);
+            }
+            directory = header.position();
+            data = Math.addExact(directory, Math.multiplyExact(blockCount, BLOCK_ENTRY_SIZE));
+            if (data > limit) {
+                throw new IOException("Truncated token index: " + path);
+            }
+        }
+        catch (RuntimeException e) {
+            // контрольная сумма совпала, но содержимое не соответствует формату
+            throw new IOException("Corrupted token index file: " + path, e);
+        }
+    }
+
+    /**
+     * Разбор файла и запись индекса его токенов. Файл читается целиком и разбирается токенайзером
+     * через openBytes с учетом его пропускаемых токенов, ранее открытый поток токенайзера заменяется
+     * @param tokenizer - токенайзер
+     * @param source - разбираемый файл
+     * @param charset - кодировка файла
+     * @param indexFile - файл индекса
+     * @throws IOException
+     */
+    public static void write(Tokenizer tokenizer, Path source, Charset charset, Path indexFile) throws IOException {
+        byte[] bytes = Files.readAllBytes(source);
+        tokenizer.openBytes(bytes, bytes.length, charset);
+        Writer writer = new Writer();
+        int id;
+        while ((id = tokenizer.advance()) >= 0) {
+            writer.add(id, tokenizer.curTokenType(), tokenizer.curTokenOffset(), tokenizer.curTokenEnd(),
+                    tokenizer.curTokenLength(), tokenizer.curLine(), tokenizer.curPos());
+        }
+        writer.finish();
+
+        CompiledRules rules = tokenizer.getRules();
+        int ids = rules.tokenType.length;
+        byte[] packed = new byte[(ids + 7) / 8];
+        for (int i = 0; i < ids; i++) {
+            if (tokenizer.isSkipped(i)) {
+                packed[i >> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+        byte[] name = charset.name().getBytes(StandardCharsets.US_ASCII);
+        long size = 8 + DIGEST_SIZE * 2 + 8 + 2 + name.length + 4 + packed.length + 8
+                + (long) writer.blockCount * BLOCK_ENTRY_SIZE + writer.dataLength + 4;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Token index is too large: " + size);
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.putShort((short) 0);
+        out.put(rules.fingerprint().toBytes());
+        out.put(sha256(bytes));
+        out.putLong(bytes.length);
+        out.putShort((short) name.length);
+        out.put(name);
+        out.putInt(ids);
+        out.put(packed);
+        out.putInt(writer.count);
+        out.putInt(writer.blockCount);
+        for (int b = 0; b < writer.blockCount; b++) {
+            out.putInt(writer.blockData[b]);
+            out.putLong(writer.blockOffset[b]);
+            out.putInt(writer.blockLine[b]);
+        }
+        out.put(writer.data, 0, writer.dataLength);
+        CRC32C crc = new CRC32C();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        out.flip();
+        // индекс пишется во временный файл рядом и подменяется целиком: открытые индексы держат
+        // прежний файл отображенным в память, его нельзя обрезать или переписывать на месте
+        Path dir = indexFile.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+            Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Открытие файла индекса
+     * @param indexFile - файл индекса
+     * @return индекс
+     * @throws IOException файл поврежден или другой версии
+     */
+    public static TokenIndex open(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Not a token index file: " + indexFile);
+            }
+            return new TokenIndex(indexFile, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Открытие действительного индекса файла. Если индекса нет, он поврежден или устарел,
+     * файл разбирается заново и индекс перезаписывается
+     * @param indexFile - файл индекса
+     * @param source - разбираемый файл
+     * @param charset - кодировка файла
+     * @param tokenizer - токенайзер, правила и пропускаемые токены которого должны совпасть с индексом
+     * @return действительный индекс
+     * @throws IOException
+     */
+    public static TokenIndex openOrBuild(Path indexFile, Path source, Charset charset, Tokenizer tokenizer) throws IOException {
+        if (Files.exists(indexFile)) {
+            try {
+                TokenIndex index = open(indexFile);
+                if (index.isValidFor(source, charset, tokenizer)) {
+                    return index;
+                }
+            }
+            catch (IOException e) {
+                // поврежденный индекс строится заново
+            }
+        }
+        write(tokenizer, source, charset, indexFile);
+        return open(indexFile);
+    }
+
+    /**
+     * Действителен ли индекс для файла и токенайзера: совпадают правила, пропускаемые токены,
+     * кодировка и байты файла. Байты файла хешируются, только если совпало остальное
+     * @param source - разбираемый файл
+     * @param charset - кодировка файла
+     * @param tokenizer - токенайзер
+     * @return true если индекс действителен
+     * @throws IOException
+     */
+    public boolean isValidFor(Path source, Charset charset, Tokenizer tokenizer) throws IOException {
+        CompiledRules rules = tokenizer.getRules();
+        if (!Arrays.equals(rulesDigest, rules.fingerprint().toBytes()) || !charsetName.equals(charset.name())
+                || skipMask.length != rules.tokenType.length) {
+            return false;
+        }
+        for (int i = 0; i < skipMask.length; i++) {
+            if (skipMask[i] != tokenizer.isSkipped(i)) {
+                return false;
+            }
+        }
+        if (Files.size(source) != sourceSize) {
+            return false;
+        }
+        return Arrays.equals(sourceDigest, sha256(Files.readAllBytes(source)));
+    }
+
+    /**
+     * Количество токенов
+     * @return количество токенов
+     */
+    public int size() {
+        return tokenCount;
+    }
+
+    /**
+     * Чтение токенов в пакет, начиная с токена from. Заполняет пакет с начала, пока он не заполнится
+     * или не закончатся токены
+     * @param from - номер первого токена
+     * @param batch - пакет токенов
+     * @return количество прочитанных токенов
+     */
+    public int read(int from, TokenBatch batch) {
+        if (from < 0 || from > tokenCount) {
+            throw new IndexOutOfBoundsException("token " + from + ", size " + tokenCount);
+        }
+        int n = Math.min(batch.capacity(), tokenCount - from);
+        int index = from;
+        int filled = 0;
+        while (filled < n) {
+            int block = index / BLOCK_SIZE;
+            int skip = index - block * BLOCK_SIZE;
+            int count = Math.min(blockLength(block) - skip, n - filled);
+            decode(block, skip, count, batch, filled, null);
+            filled += count;
+            index += count;
+        }
+        batch.size = n;
+        return n;
+    }
+
+    /**
+     * id токена
+     * @param i - номер токена
+     * @return id токена
+     */
+    public int id(int i) {
+        return cached.id[load(i)];
+    }
+
+    /**
+     * Тип токена
+     * @param i - номер токена
+     * @return тип токена
+     */
+    public TokenType type(int i) {
+        return cached.getType(load(i));
+    }
+
+    /**
+     * Смещение начала токена в байтах файла
+     * @param i - номер токена
+     * @return смещение
+     */
+    public long offset(int i) {
+        return cached.offset[load(i)];
+    }
+
+    /**
+     * Смещение конца токена в байтах файла
+     * @param i - номер токена
+     * @return смещение
+     */
+    public long end(int i) {
+        int k = load(i);
+        return cached.offset[k] + cachedByteLength[k];
+    }
+
+    /**
+     * Длина токена в символах
+     * @param i - номер токена
+     * @return длина
+     */
+    public int length(int i) {
+        return cached.length[load(i)];
+    }
+
+    /**
+     * Строка начала токена
+     * @param i - номер токена
+     * @return строка
+     */
+    public int line(int i) {
+        return cached.line[load(i)];
+    }
+
+    /**
+     * Позиция начала токена в строке
+     * @param i - номер токена
+     * @return позиция
+     */
+    public int col(int i) {
+        return cached.col[load(i)];
+    }
+
+    /**
+     * Декодирование блока токена в общий буфер
+     * @param i - номер токена
+     * @return индекс токена в буфере
+     */
+    private int load(int i) {
+        if (i < 0 || i >= tokenCount) {
+            throw new IndexOutOfBoundsException("token " + i + ", size " + tokenCount);
+        }
+        int block = i / BLOCK_SIZE;
+        if (block != cachedBlock) {
+            cachedBlock = -1;
+            decode(block, 0, blockLength(block), cached, 0, cachedByteLength);
+            cachedBlock = block;
+        }
+        return i - block * BLOCK_SIZE;
+    }
+
+    private int blockLength(int block) {
+        return Math.min(BLOCK_SIZE, tokenCount - block * BLOCK_SIZE);
+    }
+
+    /**
+     * Декодирование части блока. Столбцы блока идут подряд, поэтому каждый столбец читается от начала блока
+     * @param block - номер блока
+     * @param skip - количество пропускаемых первых токенов блока
+     * @param count - количество декодируемых токенов
+     * @param batch - пакет
+     * @param to - индекс первого токена в пакете
+     * @param byteLength - длины токенов в байтах или null
+     */
+    private void decode(int block, int skip, int count, TokenBatch batch, int to, int[] byteLength) {
+        int entry = directory + block * BLOCK_ENTRY_SIZE;
+        ByteBuffer pos = in.duplicate().position(data + in.getInt(entry));
+        long offset = in.getLong(entry + 4);
+        int line = in.getInt(entry + 12);
+        int length = blockLength(block);
+        int end = skip + count;
+        for (int k = 0; k < length; k++) {
+            int id = readVarInt(pos);
+            if (k >= skip && k < end) {
+                batch.id[to + k - skip] = id;
+            }
+        }
+        for (int k = 0; k < length; k++) {
+            byte type = pos.get();
+            if (k >= skip && k < end) {
+                batch.type[to + k - skip] = type;
+            }
+        }
+        for (int k = 0; k < length; k++) {
+            offset += readVarLong(pos);
+            if (k >= skip && k < end) {
+                batch.offset[to + k - skip] = offset;
+            }
+        }
+        for (int k = 0; k < length; k++) {
+            int bytes = readVarInt(pos);
+            if (byteLength != null && k >= skip && k < end) {
+                byteLength[to + k - skip] = bytes;
+            }
+        }
+        for (int k = 0; k < length; k++) {
+            int chars = readVarInt(pos);
+            if (k >= skip && k < end) {
+                batch.length[to + k - skip] = chars;
+            }
+        }
+        for (int k = 0; k < length; k++) {
+            line += readVarInt(pos);
+            if (k >= skip && k < end) {
+                batch.line[to + k - skip] = line;
+            }
+        }
+        // последний столбец дальше нужных токенов не читается
+        for (int k = 0; k < end; k++) {
+            int col = readVarInt(pos);
+            if (k >= skip) {
+                batch.col[to + k - skip] = col;
+            }
+        }
+    }
+
+    private static int readVarInt(ByteBuffer pos) {
+        return (int) readVarLong(pos);
+    }
+
+    private static long readVarLong(ByteBuffer pos) {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = pos.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while (b < 0);
+        return value;
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Накопление токенов блоками и кодирование блоков в столбцы
+     */
+    private static final class Writer {
+        private final int[] id = new int[BLOCK_SIZE];
+        private final byte[] type = new byte[BLOCK_SIZE];
+        private final long[] offset = new long[BLOCK_SIZE];
+        private final int[] byteLength = new int[BLOCK_SIZE];
+        private final int[] length = new int[BLOCK_SIZE];
+        private final int[] line = new int[BLOCK_SIZE];
+        private final int[] col = new int[BLOCK_SIZE];
+        // токены текущего блока
+        private int n;
+        // все токены
+        int count;
+        int blockCount;
+        int[] blockData = new int[16];
+        long[] blockOffset = new long[16];
+        int[] blockLine = new int[16];
+        byte[] data = new byte[4096];
+        int dataLength;
+
+        void add(int id, TokenType type, long offset, long end, int length, int line, int col) {
+            this.id[n] = id;
+            this.type[n] = (byte) type.ordinal();
+            this.offset[n] = offset;
+            this.byteLength[n] = (int) (end - offset);
+            this.length[n] = length;
+            this.line[n] = line;
+            this.col[n] = col;
+            n++;
+            count++;
+            if (n == BLOCK_SIZE) {
+                flush();
+            }
+        }
+
+        void finish() {
+            if (n > 0) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (blockCount == blockData.length) {
+                blockData = Arrays.copyOf(blockData, blockCount * 2);
+                blockOffset = Arrays.copyOf(blockOffset, blockCount * 2);
+                blockLine = Arrays.copyOf(blockLine, blockCount * 2);
+            }
+            blockData[blockCount] = dataLength;
+            blockOffset[blockCount] = offset[0];
+            blockLine[blockCount] = line[0];
+            blockCount++;
+            for (int k = 0; k < n; k++) {
+                putVarLong(id[k]);
+            }
+            ensure(n);
+            for (int k = 0; k < n; k++) {
+                data[dataLength++] = type[k];
+            }
+            long previousOffset = offset[0];
+            for (int k = 0; k < n; k++) {
+                putVarLong(offset[k] - previousOffset);
+                previousOffset = offset[k];
+            }
+            for (int k = 0; k < n; k++) {
+                putVarLong(byteLength[k]);
+            }
+            for (int k = 0; k < n; k++) {
+                putVarLong(length[k]);
+            }
+            int previousLine = line[0];
+            for (int k = 0; k < n; k++) {
+                putVarLong(line[k] - previousLine);
+                previousLine = line[k];
+            }
+            for (int k = 0; k < n; k++) {
+                putVarLong(col[k]);
+            }
+            n = 0;
+        }
+
+        private void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                data[dataLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[dataLength++] = (byte) value;
+        }
+
+        private void ensure(int bytes) {
+            if (dataLength + bytes > data.length) {
+                data = Arrays.copyOf(data, Math.max(dataLength + bytes, data.length * 2));
+            }
+        }
+    }
+}
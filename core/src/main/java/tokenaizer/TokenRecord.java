@@ -0,0 +1,34 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+/**
+ * Токен как неизменяемое значение, элемент потока Tokenizer.tokens() и ParallelTokenizer.tokens()
+ * @param id - id токена
+ * @param type - тип токена
+ * @param text - текст токена
+ * @param offset - смещение начала токена от начала потока
+ * @param length - длина токена в символах
+ * @param line - строка начала токена
+ * @param col - позиция начала токена в строке
+ */
+public record TokenRecord(int id, TokenType type, String text, long offset, int length, int line, int col) {
+}
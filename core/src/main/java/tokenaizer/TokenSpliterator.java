@@ -0,0 +1,290 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spliterator токенов для Stream. Токены читаются токенайзером по одному при обходе.
+ * Текст в памяти, открытый через ParallelTokenizer, делится при первом trySplit: текст режется
+ * на куски, состояния разбора на их границах находятся параллельным разбором без сохранения токенов,
+ * дальше делится список кусков. Каждый кусок разбирается лениво своим токенайзером, размер известен точно.
+ * Ошибки чтения выдаются как UncheckedIOException
+ */
+final class TokenSpliterator {
+    // оценка средней длины токена для размера потока по длине текста
+    static final int AVG_TOKEN_CHARS = 5;
+    // текст короче не делится, параллельный разбор не окупается
+    static final int MIN_SPLIT_CHARS = 1 << 16;
+
+    private TokenSpliterator() {
+    }
+
+    static Stream<TokenRecord> records(Cursor cursor) {
+        return StreamSupport.stream(new Records(cursor), false);
+    }
+
+    static IntStream ids(Cursor cursor) {
+        return StreamSupport.intStream(new Ids(cursor), false);
+    }
+
+    /**
+     * Позиция обхода токенов: токенайзер до деления или диапазон кусков текста после
+     */
+    static final class Cursor {
+        // текст в памяти, null для потока символов
+        private final char[] text;
+        // параллельный разбор для деления, null если деление не поддерживается
+        private final ParallelTokenizer parallel;
+        // длина текста для оценки количества токенов, -1 если неизвестна
+        private final long length;
+        private Tokenizer tokenizer;
+        private boolean started;
+        // куски [index, fence) и остаток токенов куска, который читает tokenizer
+        private ArrayList<ParallelTokenizer.Segment> segments;
+        private int index;
+        private int fence;
+        private long left;
+        private long remaining;
+        private int id;
+
+        /**
+         * Обход токенов открытого токенайзера
+         * @param tokenizer - токенайзер
+         * @param text - текст в памяти или null
+         * @param parallel - параллельный разбор текста для деления или null
+         * @param length - длина текста или -1
+         */
+        Cursor(Tokenizer tokenizer, char[] text, ParallelTokenizer parallel, long length) {
+            this.tokenizer = tokenizer;
+            this.text = text;
+            this.parallel = parallel;
+            this.length = length;
+        }
+
+        private Cursor(char[] text, ParallelTokenizer parallel, ArrayList<ParallelTokenizer.Segment> segments,
+                       Tokenizer tokenizer, long left, int index, int fence) {
+            this.text = text;
+            this.parallel = parallel;
+            this.length = -1;
+            this.started = true;
+            this.segments = segments;
+            this.tokenizer = tokenizer;
+            this.left = left;
+            this.index = index;
+            this.fence = fence;
+            this.remaining = left;
+            for (int i = index; i < fence; i++) {
+                remaining += segments.get(i).count;
+            }
+        }
+
+        /**
+         * Переход к следующему токену
+         * @return false если токены закончились
+         */
+        boolean next() {
+            try {
+                if (segments == null) {
+                    if (tokenizer == null) {
+                        return false;
+                    }
+                    started = true;
+                    id = tokenizer.advance();
+                    if (id < 0) {
+                        tokenizer = null;
+                        return false;
+                    }
+                    return true;
+                }
+                while (left == 0) {
+                    if (index == fence) {
+                        tokenizer = null;
+                        return false;
+                    }
+                    ParallelTokenizer.Segment segment = segments.get(index++);
+                    tokenizer = parallel.open(text, segment);
+                    left = segment.count;
+                }
+                id = tokenizer.advance();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            left--;
+            remaining--;
+            return true;
+        }
+
+        int id() {
+            return id;
+        }
+
+        TokenRecord record() {
+            return new TokenRecord(id, tokenizer.curTokenType(), tokenizer.curToken(), tokenizer.curTokenOffset(),
+                    tokenizer.curTokenLength(), tokenizer.curLine(), tokenizer.curPos());
+        }
+
+        /**
+         * Отделение начала оставшихся токенов
+         * @return обход начала токенов или null если деление невозможно
+         */
+        Cursor trySplit() {
+            if (segments == null) {
+                if (parallel == null || started || text.length < MIN_SPLIT_CHARS) {
+                    return null;
+                }
+                ArrayList<ParallelTokenizer.Segment> list;
+                try {
+                    list = parallel.segments(text);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                started = true;
+                tokenizer = null;
+                segments = list;
+                fence = list.size();
+                for (ParallelTokenizer.Segment segment : list) {
+                    remaining += segment.count;
+                }
+            }
+            int mid = (index + fence) >>> 1;
+            if (mid == index) {
+                return null;
+            }
+            Cursor prefix = new Cursor(text, parallel, segments, tokenizer, left, index, mid);
+            tokenizer = null;
+            left = 0;
+            index = mid;
+            remaining -= prefix.remaining;
+            return prefix;
+        }
+
+        long estimateSize() {
+            if (segments != null) {
+                return remaining;
+            }
+            if (length < 0) {
+                return Long.MAX_VALUE;
+            }
+            if (tokenizer == null) {
+                return 0;
+            }
+            long rest = started ? length - tokenizer.curTokenOffset() : length;
+            return Math.max(0, rest) / AVG_TOKEN_CHARS;
+        }
+
+        int characteristics() {
+            return segments != null ? Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE
+                    | Spliterator.SIZED | Spliterator.SUBSIZED
+                    : Spliterator.ORDERED | Spliterator.NONNULL;
+        }
+    }
+
+    private static final class Records implements Spliterator<TokenRecord> {
+        private final Cursor cursor;
+
+        Records(Cursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super TokenRecord> action) {
+            if (!cursor.next()) {
+                return false;
+            }
+            action.accept(cursor.record());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super TokenRecord> action) {
+            while (cursor.next()) {
+                action.accept(cursor.record());
+            }
+        }
+
+        @Override
+        public Spliterator<TokenRecord> trySplit() {
+            Cursor prefix = cursor.trySplit();
+            return prefix == null ? null : new Records(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return cursor.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return cursor.characteristics();
+        }
+    }
+
+    private static final class Ids implements Spliterator.OfInt {
+        private final Cursor cursor;
+
+        Ids(Cursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (!cursor.next()) {
+                return false;
+            }
+            action.accept(cursor.id());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            while (cursor.next()) {
+                action.accept(cursor.id());
+            }
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            Cursor prefix = cursor.trySplit();
+            return prefix == null ? null : new Ids(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return cursor.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return cursor.characteristics();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+/**
+ * Типы токенов:
+ *    <li>keywords - ключевые слова - ищется в тексте полное совпадение со списком </li>
+ *    <li>operators - операторы - ищется в тексте полное совпадение со списком </li>
+ *    <li>literal - литералы - ищется фраза ограниченная слева и справа, пропускаЯ экранированные справа </li>
+ *    <li>comment - коментарий - ищется фраза ограниченная справа и слева или однострочный коментарий </li>
+ *    <li>space - разделители слов -  ищется подряд идущие символы разделители </li>
+ *    <li>word - слова - текст между разделителями слов или другими выражениями </li>
+ */
+public enum TokenType {
+    operator,
+    literal,
+    comment,
+    space,
+    word,
+    empty,
+    keyword
+}
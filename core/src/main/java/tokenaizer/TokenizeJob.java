@@ -0,0 +1,608 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Разбор всех файлов дерева каталогов. Файлы разбираются одновременно, каждый в своей задаче,
+ * по умолчанию на виртуальных потоках (Java 21 и новее, иначе в пуле по числу процессоров).
+ * Все задачи используют одни скомпилированные правила и токенайзеры из общего TokenizerPool.
+ * Файл читается в память целиком и разбирается по байтам, смещения токенов в байтах.
+ * <p>
+ * Результаты выдаются получателю в потоке вызова, по одному файлу: в порядке путей или в порядке
+ * завершения разбора. Память ограничена: учитываются байты и пакеты токенов файлов в работе
+ * и пакеты токенов результатов, еще не выданных получателю. Количество одновременно открытых файлов
+ * ограничено отдельно.
+ * </p>Пример использования: <pre>
+ *    TokenizeJob job = new TokenizeJob(rules)
+ *            .setFilter(path -> path.toString().endsWith(".java"))
+ *            .setOrdered(true);
+ *    TokenizeJob.Stats stats = job.run(Path.of("src"), file -> {
+ *        System.out.println(file.getPath() + " tokens=" + file.getTokenCount());
+ *    });
+ *    System.out.println(stats.bytesPerSecond() + " bytes/s");
+ * </pre>
+ * @see TokenizerPool
+ */
+public class TokenizeJob {
+    // ограничение суммы размеров файлов в работе по умолчанию
+    static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L << 20;
+    // ограничение одновременно открытых файлов по умолчанию
+    static final int DEFAULT_MAX_OPEN_FILES = 256;
+    // учитываемый в ограничении памяти размер результата сверх пакетов токенов
+    static final int FILE_OVERHEAD = 1024;
+    // оценка средней длины токена в байтах для памяти пакетов до разбора
+    static final int AVG_TOKEN_BYTES = 5;
+    // емкость пакетов токенов файла
+    static final int BATCH_SIZE = 4096;
+
+    private final CompiledRules rules;
+    private final TokenizerPool pool;
+    // пропускаемые типы и id токенов
+    private final EnumSet<TokenType> skipTypes = EnumSet.noneOf(TokenType.class);
+    private final BitSet skipIds = new BitSet();
+    private Charset charset = StandardCharsets.UTF_8;
+    private Predicate<Path> filter = path -> true;
+    private boolean ordered = true;
+    private long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+    private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    // внешний исполнитель задач, null - свой на каждый запуск
+    private ExecutorService executor;
+
+    /**
+     * Получатель результатов разбора файлов. Вызывается в потоке вызова run, по одному файлу
+     */
+    public interface Sink {
+        /**
+         * Результат разбора файла
+         * @param file - результат
+         * @throws IOException ошибка получателя прекращает разбор
+         */
+        void accept(FileResult file) throws IOException;
+    }
+
+    /**
+     * Конструктор
+     * @param rules - скомпилированные правила разбора, общие для всех задач
+     */
+    public TokenizeJob(CompiledRules rules) {
+        this.rules = rules;
+        this.pool = new TokenizerPool(rules);
+        if (rules.isSkipSpace()) {
+            skipTypes.add(TokenType.space);
+        }
+    }
+
+    /**
+     * возвращать/невозвращать токены разделители слов
+     * @param skipSpace логический тип
+     * @return задача разбора
+     */
+    public TokenizeJob setSkipSpace(boolean skipSpace) {
+        return setSkip(TokenType.space, skipSpace);
+    }
+
+    /**
+     * Пропускать/не пропускать токены типа
+     * @param type - тип токенов
+     * @param skip - логический тип
+     * @return задача разбора
+     * @see Tokenizer#setSkip(TokenType, boolean)
+     */
+    public TokenizeJob setSkip(TokenType type, boolean skip) {
+        if (skip) {
+            skipTypes.add(type);
+        }
+        else {
+            skipTypes.remove(type);
+        }
+        return this;
+    }
+
+    /**
+     * Пропускать/не пропускать токены с id
+     * @param id - id токена
+     * @param skip - логический тип
+     * @return задача разбора
+     * @see Tokenizer#setSkipId(int, boolean)
+     */
+    public TokenizeJob setSkipId(int id, boolean skip) {
+        skipIds.set(id, skip);
+        return this;
+    }
+
+    /**
+     * Кодировка файлов, по умолчанию UTF-8
+     * @param charset - кодировка
+     * @return задача разбора
+     */
+    public TokenizeJob setCharset(Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * Отбор разбираемых файлов, по умолчанию разбираются все обычные файлы дерева
+     * @param filter - условие на путь файла
+     * @return задача разбора
+     */
+    public TokenizeJob setFilter(Predicate<Path> filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Порядок выдачи результатов: по порядку путей файлов, одинаковый от запуска к запуску,
+     * или по завершении разбора. По умолчанию по порядку путей
+     * @param ordered - выдавать по порядку путей
+     * @return задача разбора
+     */
+    public TokenizeJob setOrdered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * Ограничение памяти файлов в работе и результатов, еще не выданных получателю. До разбора память
+     * файла оценивается по его размеру, после разбора учитываются его пакеты токенов.
+     * Файл больше ограничения разбирается один
+     * @param maxInFlightBytes - количество байт
+     * @return задача разбора
+     */
+    public TokenizeJob setMaxInFlightBytes(long maxInFlightBytes) {
+        if (maxInFlightBytes <= 0) {
+            throw new IllegalArgumentException("maxInFlightBytes must be positive: " + maxInFlightBytes);
+        }
+        this.maxInFlightBytes = maxInFlightBytes;
+        return this;
+    }
+
+    /**
+     * Ограничение количества одновременно открытых файлов
+     * @param maxOpenFiles - количество файлов
+     * @return задача разбора
+     */
+    public TokenizeJob setMaxOpenFiles(int maxOpenFiles) {
+        if (maxOpenFiles <= 0) {
+            throw new IllegalArgumentException("maxOpenFiles must be positive: " + maxOpenFiles);
+        }
+        this.maxOpenFiles = maxOpenFiles;
+        return this;
+    }
+
+    /**
+     * Исполнитель задач разбора файлов. Заданный исполнитель не завершается задачей разбора.
+     * По умолчанию на каждый запуск создается исполнитель на виртуальных потоках
+     * @param executor - исполнитель или null
+     * @return задача разбора
+     */
+    public TokenizeJob setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Разбор файлов дерева каталогов
+     * @param root - корень дерева или один файл
+     * @param sink - получатель результатов
+     * @return итоги разбора
+     * @throws IOException ошибка обхода дерева или получателя. Ошибки чтения файлов передаются в результатах
+     */
+    public Stats run(Path root, Sink sink) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).filter(filter).sorted().collect(Collectors.toList());
+        }
+        return run(files, sink);
+    }
+
+    /**
+     * Разбор списка файлов
+     * @param files - файлы, порядок списка - порядок выдачи при setOrdered(true)
+     * @param sink - получатель результатов
+     * @return итоги разбора
+     * @throws IOException ошибка получателя. Ошибки чтения файлов передаются в результатах
+     */
+    public Stats run(List<Path> files, Sink sink) throws IOException {
+        ExecutorService service = executor != null ? executor : newVirtualExecutor();
+        try {
+            return new Run(service, sink).run(files);
+        }
+        finally {
+            if (service != executor) {
+                service.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Исполнитель на виртуальных потоках, если они есть в jdk, иначе пул по числу процессоров.
+     * Вызывается через reflection, потому что библиотека собирается для Java 17
+     * @return исполнитель
+     */
+    static ExecutorService newVirtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            // нет виртуальных потоков или они выключены как preview
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Разбор одного файла. Выполняется в задаче исполнителя
+     * @param result - результат разбора, ошибка чтения или разбора сохраняется в результате
+     * @param openFiles - разрешения на открытие файла
+     */
+    private void tokenize(FileResult result, Semaphore openFiles) {
+        Path path = result.path;
+        long start = System.nanoTime();
+        try {
+            byte[] bytes;
+            openFiles.acquire();
+            try {
+                bytes = Files.readAllBytes(path);
+            }
+            finally {
+                openFiles.release();
+            }
+            result.bytes = bytes.length;
+            Tokenizer tokenizer = pool.acquire();
+            try {
+                tokenizer.setSkip(skipTypes, skipIds);
+                tokenizer.openBytes(bytes, bytes.length, charset);
+                int capacity = Math.min(BATCH_SIZE, bytes.length + 1);
+                while (true) {
+                    TokenBatch batch = new TokenBatch(capacity);
+                    if (tokenizer.nextTokens(batch) == 0) {
+                        break;
+                    }
+                    result.batches.add(batch);
+                    result.tokenCount += batch.size();
+                    capacity = BATCH_SIZE;
+                }
+            }
+            finally {
+                pool.release(tokenizer);
+            }
+            int last = result.batches.size() - 1;
+            if (last >= 0) {
+                // неполный последний пакет ужимается, он хранится до выдачи результата
+                result.batches.set(last, result.batches.get(last).trim());
+            }
+        }
+        catch (IOException e) {
+            result.error = e;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.error = new InterruptedIOException("Tokenization interrupted");
+        }
+        catch (RuntimeException | Error e) {
+            // в том числе OutOfMemoryError на файле больше 2 Гб, разбор остальных файлов продолжается
+            result.error = new IOException("Tokenization failed: " + path, e);
+        }
+        // при ошибке результат держит уже собранные пакеты
+        for (TokenBatch batch : result.batches) {
+            result.retained += batch.memory();
+        }
+        result.nanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Один запуск: отправка файлов в исполнитель в пределах ограничения памяти и выдача результатов.
+     * Ограничение памяти учитывается только потоком вызова: перед отправкой добавляется оценка памяти
+     * разбора файла, при получении результата она заменяется памятью его пакетов токенов, которая
+     * вычитается после выдачи. При выдаче по порядку первый невыданный файл всегда уже отправлен
+     */
+    private final class Run {
+        private final ExecutorService service;
+        private final Sink sink;
+        private final Semaphore openFiles = new Semaphore(maxOpenFiles);
+        private final BlockingQueue<FileResult> done = new LinkedBlockingQueue<>();
+        // разобранные, но еще не выданные по порядку результаты по номеру файла
+        private final HashMap<Integer, FileResult> waiting = new HashMap<>();
+        private final Stats stats = new Stats();
+        private int nextIndex;
+        private int pending;
+        private long inFlight;
+
+        Run(ExecutorService service, Sink sink) {
+            this.service = service;
+            this.sink = sink;
+        }
+
+        Stats run(List<Path> files) throws IOException {
+            long start = System.nanoTime();
+            for (int i = 0; i < files.size(); i++) {
+                Path path = files.get(i);
+                long size = size(path);
+                // во время разбора в памяти и байты файла, и пакеты токенов
+                long cost = Math.min(maxInFlightBytes, size + size / AVG_TOKEN_BYTES * TokenBatch.SLOT_BYTES + FILE_OVERHEAD);
+                while (pending > 0 && inFlight + cost > maxInFlightBytes) {
+                    complete(take());
+                }
+                FileResult result = new FileResult(i, path, cost);
+                inFlight += cost;
+                pending++;
+                service.execute(() -> {
+                    try {
+                        tokenize(result, openFiles);
+                    }
+                    finally {
+                        // результат выдается всегда, иначе запуск ждал бы его бесконечно
+                        done.add(result);
+                    }
+                });
+            }
+            while (pending > 0) {
+                complete(take());
+            }
+            stats.nanos = System.nanoTime() - start;
+            return stats;
+        }
+
+        /**
+         * Размер файла для ограничения памяти
+         * @param path - путь файла
+         * @return размер или 0, если его не удалось получить, ошибку сообщит чтение файла
+         */
+        private long size(Path path) {
+            try {
+                return Files.size(path);
+            }
+            catch (IOException e) {
+                return 0;
+            }
+        }
+
+        private FileResult take() throws IOException {
+            try {
+                return done.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Tokenization interrupted");
+            }
+        }
+
+        /**
+         * Выдача результата получателю сразу или, при выдаче по порядку, вместе с ожидавшими его результатами
+         * @param result - результат разбора файла
+         * @throws IOException
+         */
+        private void complete(FileResult result) throws IOException {
+            pending--;
+            inFlight += result.retained - result.cost;
+            if (!ordered) {
+                deliver(result);
+                return;
+            }
+            waiting.put(result.index, result);
+            FileResult next;
+            while ((next = waiting.remove(nextIndex)) != null) {
+                deliver(next);
+                nextIndex++;
+            }
+        }
+
+        private void deliver(FileResult result) throws IOException {
+            stats.add(result);
+            inFlight -= result.retained;
+            sink.accept(result);
+        }
+    }
+
+    /**
+     * Результат разбора файла: токены пакетами TokenBatch, смещения токенов в байтах
+     */
+    public static final class FileResult {
+        private final int index;
+        private final Path path;
+        // оценка памяти разбора, учтенная при отправке
+        private final long cost;
+        // память, которую результат держит до выдачи
+        private long retained = FILE_OVERHEAD;
+        private final List<TokenBatch> batches = new ArrayList<>();
+        private long bytes;
+        private long tokenCount;
+        private long nanos;
+        private IOException error;
+
+        FileResult(int index, Path path, long cost) {
+            this.index = index;
+            this.path = path;
+            this.cost = cost;
+        }
+
+        /**
+         * Путь файла
+         * @return путь
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Токены файла пакетами в порядке текста
+         * @return неизменяемый список пакетов
+         */
+        public List<TokenBatch> getBatches() {
+            return Collections.unmodifiableList(batches);
+        }
+
+        /**
+         * Количество токенов
+         * @return количество токенов
+         */
+        public long getTokenCount() {
+            return tokenCount;
+        }
+
+        /**
+         * Размер файла
+         * @return количество байт
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Время чтения и разбора файла, включая ожидание разрешения на открытие
+         * @return наносекунды
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Скорость разбора файла
+         * @return байт в секунду
+         */
+        public double bytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+        }
+
+        /**
+         * Ошибка чтения или разбора файла
+         * @return ошибка или null, если файл разобран
+         */
+        public IOException getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Итоги запуска по всем файлам
+     */
+    public static final class Stats {
+        private long files;
+        private long failedFiles;
+        private long bytes;
+        private long tokens;
+        // сумма времени разбора файлов по всем задачам
+        private long fileNanos;
+        // время запуска от начала до выдачи последнего результата
+        private long nanos;
+
+        void add(FileResult result) {
+            files++;
+            if (result.error != null) {
+                failedFiles++;
+            }
+            bytes += result.bytes;
+            tokens += result.tokenCount;
+            fileNanos += result.nanos;
+        }
+
+        /**
+         * Количество файлов
+         * @return количество файлов, включая файлы с ошибками
+         */
+        public long getFiles() {
+            return files;
+        }
+
+        /**
+         * Количество файлов с ошибками чтения или разбора
+         * @return количество файлов
+         */
+        public long getFailedFiles() {
+            return failedFiles;
+        }
+
+        /**
+         * Количество байт разобранных файлов
+         * @return количество байт
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Количество токенов
+         * @return количество токенов
+         */
+        public long getTokens() {
+            return tokens;
+        }
+
+        /**
+         * Время запуска
+         * @return наносекунды
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Сумма времени разбора отдельных файлов, больше времени запуска при одновременном разборе
+         * @return наносекунды
+         */
+        public long getFileNanos() {
+            return fileNanos;
+        }
+
+        /**
+         * Общая скорость разбора
+         * @return байт в секунду
+         */
+        public double bytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+        }
+
+        /**
+         * Общая скорость разбора
+         * @return токенов в секунду
+         */
+        public double tokensPerSecond() {
+            return nanos == 0 ? 0 : tokens * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "files=" + files + " failed=" + failedFiles + " bytes=" + bytes + " tokens=" + tokens
+                    + " ms=" + nanos / 1000000 + " bytes/s=" + (long) bytesPerSecond() + " tokens/s=" + (long) tokensPerSecond();
+        }
+    }
+}
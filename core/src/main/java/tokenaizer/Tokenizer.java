@@ -0,0 +1,1814 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ *
+ * Класс рабора потока символов на токены по заданным правилам. Описани правил можно посмотреть в описании TokenizerFactory
+ * смотрит вперед по тексту для разрешения коллизий.
+ * <p>
+ * Правила задаются в скомпилированном виде или загружаются из json или через фабрику тоенайзеров
+ * </br><pre>  TokenizerFactory.create().addKeyword(new String[] {"begin"})
+ *                            .addKeyword(new String[] {":=","::"})
+ *                            .setIgnoreCase(true)
+ *                            .newTokenizer();
+ *                            </pre>
+ * </br>Описание правил: <li>keywords - ключевые слова - ищется в тексте полное совпадение со списком </li>
+ *                   <li>operators - операторы - ищется в тексте полное совпадение со списком </li>
+ *                   <li>literal - литералы - ищется фраза ограниченная слева и справа, пропускаЯ экранированные справа </li>
+ *                   <li>comment - коментарий - ищется фраза ограниченная справа и слева или однострочный коментарий </li>
+ *                   <li>space - разделители слов -  ищется подряд идущие символы разделители </li>
+ *                   <li>word - слова - текст между разделителями слов или другими выражениями </li>
+ *                   <li>empty - пустой токен, выдается в конце поиска <li/>
+ *                   </p>
+ * </p>Пример использования: <pre>
+ *    tokenizer.openFile("d:\\test.txt");
+ *    String token;
+ *    do {
+ *        token = tokenizer.nextToken();
+ *        System.out.println(tokenizer.curTokenType()+":" + token + " line="+tokenizer.curLine());
+ *    } while (token!=null);
+ *    reader.close();
+ * </pre>
+ *  @see TokenizerFactory
+ */
+public class Tokenizer {
+    // скомпилированные правила, таблицы ниже - ссылки на их таблицы для быстрого доступа
+    private CompiledRules rules;
+    // таблица переходов состояний
+    private StateTable stateTable;
+    // очередь типов прочитанных токенов
+    private TokenType [] tokenType ;
+    // порядковые номера типов токенов по состояниям, для заполнения TokenBatch
+    private byte [] tokenTypeOrdinal;
+    // плоская таблица перевода символа входного алфавита во внутренний, индекс - код символа
+    private char[] abTable;
+    // канонический текст ключевых слов и операторов по id
+    private String[] wordText;
+    // петли тела токена по состояниям и байты остановки пословного просмотра, см. CompiledRules
+    private boolean[][] bodyLoop;
+    private long[][] bodyStops;
+    // массив байт как массив long для пословного просмотра тела токена
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    // таблица перевода байта во внутренний алфавит, для байтового ввода
+    private char[] byteTable;
+    Token tokBuffer = new Token();
+    Token tokTokenBuffer = new Token();
+    // текущее состояние
+    private int state;
+    // текущий символ исходного алфавита
+    char ch=0;
+    // текущий символ алфавита
+    int abChar =0;
+    // пропускаемые типы и id токенов
+    private final EnumSet<TokenType> skipTypes = EnumSet.of(TokenType.space);
+    private final BitSet skipIds = new BitSet();
+    // признак пропуска токена по id для текущих правил, строится по skipTypes и skipIds
+    private boolean[] skipMask = new boolean[0];
+    // читатель символов
+    private Reader textReader;
+    // размер буфера чтения символов из потока
+    static final int BUFFER_SIZE = 16384;
+    private static final char[] EMPTY_BUFFER = new char[0];
+    // собственный буфер токенайзера, создается при первом чтении из потока,
+    // переиспользуется между потоками и растет под длинные токены
+    private char[] readBuffer;
+    // текущий буфер символов: readBuffer при чтении из потока или массив символов строки
+    private char[] buf = EMPTY_BUFFER;
+    // смещение первого символа буфера от начала потока
+    private long bufBase;
+    // индекс следующего символа в буфере
+    private int bufPos;
+    // количество прочитанных символов в буфере
+    private int bufLen;
+    // максимальный размер окна отображения файла в память
+    static final long MAP_WINDOW = 1L << 30;
+    // размер окна отображения этого токенайзера, меньше MAP_WINDOW только в тестах границ окна
+    private long mapWindowSize = MAP_WINDOW;
+    // файл отображенный в память, режим openMappedFile, null для байтового ввода из массива или буфера
+    private FileChannel mappedChannel;
+    // канал открыт openMappedFile и закрывается токенайзером, общий канал openMapped закрывает его владелец
+    private boolean ownChannel;
+    // байтовый ввод: окно отображенного файла или буфер openBytes, openBuffer
+    private ByteBuffer mappedInput;
+    // массив байт буфера ввода и смещение начала буфера в нем, null если у буфера нет доступного массива
+    private byte[] mappedArray;
+    private int mappedArrayOffset;
+    // смещение текущего окна отображения от начала файла
+    private long mappedBase;
+    // индекс следующего байта и граница данных в окне отображения
+    private int mappedPos;
+    private int mappedLimit;
+    // граница, до которой байты ASCII читаются без проверки сдвига окна
+    private int mappedFastLimit;
+    // смещение в байтах текущего символа от начала файла
+    private long chOffset;
+    // смещение в символах текущего символа и количество выданных символов байтового ввода
+    private long chCharOffset;
+    private long charCount;
+    // размер отображаемого файла
+    private long mappedSize;
+    // байты файла в кодировке utf-8, иначе однобайтовая кодировка
+    private boolean mappedUtf8;
+    // младший символ суррогатной пары, ожидающий выдачи
+    private char pendingChar;
+    // позиция текущего символа  в потоке
+    private Position textPosition = new Position(1,1);
+    // представление текста текущего токена без копирования
+    private final TokenView tokenView = new TokenView();
+    // смещение конца текста текущего токена
+    private long tokenEnd;
+    // счетчики метрик, null если метрики выключены
+    private TokenizerMetrics.Recorder recorder;
+    // таблица символов для слов, null если не используется
+    private SymbolTable symbols;
+    // ленивые позиции: строка и позиция токена вычисляются по индексу начал строк
+    private boolean lazyPositions;
+    // смещения в символах начал строк после первой, заполняется по мере чтения
+    private long[] lineStarts = new long[64];
+    private int lineCount;
+    // смещение во входном тексте, до которого найдены начала строк, и то же смещение в символах
+    private long indexedTo;
+    private long indexedChars;
+    // лишняя строка при переводе строки в начале текста, как у start()
+    private int lineExtra;
+    // строка и позиция текущего токена, вычисленные по индексу, и номер токена, для которого они вычислены
+    private int resolvedStamp = -1;
+    private int resolvedLine;
+    private int resolvedCol;
+    /**
+     * возвращать/невозвращать токены разделители слов
+     * @param skipSpace логический тип
+     * @return токенайзер
+     */
+    public Tokenizer setSkipSpace(boolean skipSpace) {
+        return setSkip(TokenType.space, skipSpace);
+    }
+
+    /**
+     * Пропускать/не пропускать токены типа. Пропущенные токены разбираются, но не выдаются и их текст не создается
+     * @param type - тип токенов
+     * @param skip - логический тип
+     * @return токенайзер
+     */
+    public Tokenizer setSkip(TokenType type, boolean skip) {
+        if (skip) {
+            skipTypes.add(type);
+        }
+        else {
+            skipTypes.remove(type);
+        }
+        updateSkipMask();
+        return this;
+    }
+
+    /**
+     * Пропускать/не пропускать токены с id, например выбранные ключевые слова из getWordsMap()
+     * @param id - id токена
+     * @param skip - логический тип
+     * @return токенайзер
+     */
+    public Tokenizer setSkipId(int id, boolean skip) {
+        skipIds.set(id, skip);
+        updateSkipMask();
+        return this;
+    }
+
+    /**
+     * Пропускается ли токен с id
+     * @param id - id токена
+     * @return логический тип
+     */
+    public boolean isSkipped(int id) {
+        return id >= 0 && id < skipMask.length && skipMask[id];
+    }
+
+    /**
+     * Установка пропускаемых типов и id токенов
+     * @param types - типы токенов
+     * @param ids - id токенов
+     */
+    void setSkip(Set<TokenType> types, BitSet ids) {
+        skipTypes.clear();
+        skipTypes.addAll(types);
+        skipIds.clear();
+        skipIds.or(ids);
+        updateSkipMask();
+    }
+
+    private void updateSkipMask() {
+        if (tokenType == null) {
+            return;
+        }
+        boolean[] mask = new boolean[tokenType.length];
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = skipIds.get(i) || skipTypes.contains(tokenType[i]);
+        }
+        skipMask = mask;
+    }
+    /**
+     * Конструктор
+     */
+    Tokenizer() {
+
+    }
+
+    /**
+     * Конструктор токенайзера по скомпилированным правилам, таблицы правил не копируются
+     * @param rules - правила
+     */
+    Tokenizer(CompiledRules rules) {
+        setRules(rules);
+        setSkipSpace(rules.isSkipSpace());
+    }
+
+    /**
+     * Установка скомпилированных правил
+     * @param setting
+     */
+    public void setSetting(TokenizerSetting setting) {
+        setRules(CompiledRules.of(setting));
+    }
+
+    /**
+     * Установка скомпилированных правил. Токенайзер только ссылается на таблицы правил
+     * @param rules - правила
+     */
+    public void setRules(CompiledRules rules) {
+        this.rules = rules;
+        this.stateTable = rules.stateTable;
+        this.tokenType = rules.tokenType;
+        this.tokenTypeOrdinal = rules.tokenTypeOrdinal;
+        this.abTable = rules.abTable;
+        this.byteTable = rules.byteTable;
+        this.wordText = rules.wordText;
+        this.bodyLoop = rules.bodyLoop;
+        this.bodyStops = rules.bodyStops;
+        updateSkipMask();
+        if (recorder != null && !recorder.sameRules(rules)) {
+            // счетчики по id относятся к прежним правилам
+            recorder.finish(curCharOffset());
+            recorder = recorder.metrics().newRecorder(rules);
+        }
+    }
+
+    /**
+     * Включение метрик разбора. Итоги потока добавляются в метрики по его окончании или при close()
+     * @param metrics - метрики, null выключает подсчет
+     * @return токенайзер
+     */
+    public Tokenizer setMetrics(TokenizerMetrics metrics) {
+        if (recorder != null) {
+            recorder.finish(curCharOffset());
+        }
+        recorder = metrics == null ? null : metrics.newRecorder(rules);
+        return this;
+    }
+
+    /**
+     * Возвращает метрики разбора
+     * @return метрики или null если метрики выключены
+     */
+    public TokenizerMetrics getMetrics() {
+        return recorder == null ? null : recorder.metrics();
+    }
+
+    /**
+     * Включение таблицы символов. Слова получают id символа curSymbol(), а их строки берутся из таблицы
+     * и создаются только при первом появлении слова
+     * @param symbols - таблица символов, null выключает
+     * @return токенайзер
+     */
+    public Tokenizer setSymbolTable(SymbolTable symbols) {
+        this.symbols = symbols;
+        return this;
+    }
+
+    /**
+     * Включение ленивых позиций. Разбор отслеживает только смещения символов, номера строк и позиции
+     * в строке не считаются на каждом символе. curLine(), curPos() и lineColOf вычисляют их по индексу
+     * начал строк, который строится по уже прочитанному тексту при первом запросе и перед вытеснением
+     * текста из буфера. Режим задается до открытия потока и действует для разбора с начала потока
+     * @param lazyPositions - логический тип
+     * @return токенайзер
+     */
+    public Tokenizer setLazyPositions(boolean lazyPositions) {
+        this.lazyPositions = lazyPositions;
+        return this;
+    }
+
+    /**
+     * Включены ли ленивые позиции
+     * @return логический тип
+     */
+    public boolean isLazyPositions() {
+        return lazyPositions;
+    }
+
+    /**
+     * Возвращает таблицу символов
+     * @return таблица символов или null если она не используется
+     */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Возвращает скомпилированные правила токенайзера
+     * @return правила
+     */
+    public CompiledRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Возвращает настройки правил
+     * @return TokenizerSetting - настройки
+     */
+    public TokenizerSetting getSetting() {
+        return rules.toSetting();
+    }
+
+    /**
+     * Открытие потока данных для парсинга из текстового файла
+     * @param fileName
+     * @throws IOException
+     */
+    public void openFile(String fileName) throws IOException {
+        // буферизация выполняется самим токенайзером блоками по BUFFER_SIZE символов
+        Reader reader = new FileReader(fileName);
+        setReader(reader);
+    }
+    /**
+     * Открытие файла для парсинга через отображение в память. Байты файла разбираются прямо из
+     * отображенного буфера без копирования в ридер, чтение с диска выполняет кеш страниц ОС.
+     * Файлы больше MAP_WINDOW отображаются последовательными окнами.
+     * Для кодировок отличных от UTF-8, ISO-8859-1 и US-ASCII файл читается через ридер
+     * @param path - путь к файлу
+     * @param charset - кодировка файла
+     * @throws IOException
+     */
+    public void openMappedFile(Path path, Charset charset) throws IOException {
+        boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+        if (!utf8 && !StandardCharsets.ISO_8859_1.equals(charset) && !StandardCharsets.US_ASCII.equals(charset)) {
+            setReader(new InputStreamReader(Files.newInputStream(path), charset));
+            return;
+        }
+        closeChannel();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.textReader = null;
+            buf = EMPTY_BUFFER;
+            bufLen = 0;
+            bufBase = 0;
+            mappedChannel = channel;
+            ownChannel = true;
+            mappedSize = channel.size();
+            mappedUtf8 = utf8;
+            pendingChar = 0;
+            charCount = 0;
+            mappedBase = 0;
+            mappedPos = 0;
+            mapWindow(0);
+        }
+        catch (IOException | RuntimeException e) {
+            // канал, который не удалось отобразить, закрывается сразу
+            mappedChannel = null;
+            mappedInput = null;
+            try {
+                channel.close();
+            }
+            catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        start();
+    }
+
+    /**
+     * Открытие массива байт для парсинга без декодирования в символы. Автомат работает прямо по байтам
+     * через таблицу алфавита на 256 байт, медленный путь только для многобайтовых последовательностей utf-8.
+     * Смещения токенов в байтах, смещения в символах возвращает curTokenCharOffset().
+     * Массив не копируется и не должен меняться до конца разбора.
+     * Для кодировок отличных от UTF-8, ISO-8859-1 и US-ASCII байты декодируются в строку
+     * @param bytes - байты текста
+     * @param length - количество байт текста в начале массива
+     * @param charset - кодировка текста
+     * @throws IOException
+     */
+    public void openBytes(byte[] bytes, int length, Charset charset) throws IOException {
+        if (!isByteCharset(charset)) {
+            openString(new String(bytes, 0, length, charset));
+            return;
+        }
+        openByteInput(ByteBuffer.wrap(bytes, 0, length).slice(), StandardCharsets.UTF_8.equals(charset));
+        start();
+    }
+
+    /**
+     * Открытие буфера байт для парсинга без декодирования в символы, как openBytes. Разбираются байты
+     * от позиции до границы буфера, позиция буфера не меняется. Буфер без доступного массива, например
+     * прямой, читается через ByteBuffer.get
+     * @param buffer - буфер байт текста
+     * @param charset - кодировка текста
+     * @throws IOException
+     */
+    public void openBuffer(ByteBuffer buffer, Charset charset) throws IOException {
+        if (!isByteCharset(charset)) {
+            openString(charset.decode(buffer.duplicate()).toString());
+            return;
+        }
+        openByteInput(buffer.slice(), StandardCharsets.UTF_8.equals(charset));
+        start();
+    }
+
+    /**
+     * Разбирается ли текст в кодировке прямо по байтам
+     * @param charset - кодировка
+     * @return true для UTF-8, ISO-8859-1 и US-ASCII
+     */
+    private static boolean isByteCharset(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset) || StandardCharsets.ISO_8859_1.equals(charset)
+                || StandardCharsets.US_ASCII.equals(charset);
+    }
+
+    /**
+     * Установка буфера байт как всего входного текста, без начала разбора
+     * @param input - буфер, байты с индекса 0 до границы
+     * @param utf8 - байты в кодировке utf-8, иначе однобайтовая кодировка
+     */
+    private void openByteInput(ByteBuffer input, boolean utf8) throws IOException {
+        closeChannel();
+        this.textReader = null;
+        buf = EMPTY_BUFFER;
+        bufLen = 0;
+        bufBase = 0;
+        mappedInput = input;
+        mappedArray = input.hasArray() ? input.array() : null;
+        mappedArrayOffset = input.hasArray() ? input.arrayOffset() : 0;
+        mappedSize = input.limit();
+        mappedUtf8 = utf8;
+        pendingChar = 0;
+        charCount = 0;
+        mappedBase = 0;
+        mappedPos = 0;
+        mappedLimit = input.limit();
+        mappedFastLimit = mappedLimit;
+    }
+
+    /**
+     * Размер окна отображения файла в память для следующих openMappedFile
+     * @param size - размер окна в байтах, больше длины самого длинного токена и последовательности utf-8
+     */
+    void setMapWindow(long size) {
+        mapWindowSize = size;
+    }
+
+    /**
+     * Отображение в память окна файла начиная с заданного смещения
+     * @param position - смещение от начала файла
+     * @throws IOException
+     */
+    private void mapWindow(long position) throws IOException {
+        long oldBase = mappedBase;
+        mappedBase = position;
+        mappedInput = mappedChannel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(mapWindowSize, mappedSize - position));
+        mappedArray = null;
+        mappedLimit = mappedInput.limit();
+        // в конце файла окно не сдвигается, иначе последовательность utf-8 должна помещаться в окне целиком
+        mappedFastLimit = position + mappedLimit < mappedSize ? mappedLimit - 4 : mappedLimit;
+        // индекс следующего байта пересчитываем относительно нового окна
+        mappedPos = (int) (oldBase + mappedPos - position);
+    }
+    /**
+     *  Открытие потока  данных для парсинга из строки. Символы строки разбираются без промежуточного ридера
+     * @param text
+     * @throws IOException
+     */
+    public void openString(String text) throws IOException {
+        closeChannel();
+        this.textReader = null;
+        this.mappedInput = null;
+        buf = text.toCharArray();
+        bufLen = buf.length;
+        bufBase = 0;
+        start();
+    }
+    /**
+     *  Установка потока для парсинга
+     * @param reader - входной поток символов
+     * @throws IOException
+     */
+    public void setReader(Reader reader) throws IOException {
+        closeChannel();
+        this.textReader = reader;
+        this.mappedInput = null;
+        if (readBuffer==null) {
+            readBuffer = new char[BUFFER_SIZE];
+        }
+        buf = readBuffer;
+        bufLen = 0;
+        bufBase = 0;
+        start();
+    }
+
+    /**
+     * Начальное состояние разбора нового потока
+     * @throws IOException
+     */
+    void start() throws IOException {
+        bufPos = 0;
+        state=Const.RS_STATE_ALFA;
+        bufIndex=1;
+
+        tokBuffer = new Token();
+        tokBuffer.state = Const.RS_STATE_ALFA;
+        tokTokenBuffer.length = 0;
+
+        // Прочитаем первый симол потока
+        textPosition = new Position(1,1);
+        lineCount = 0;
+        indexedTo = bufBase;
+        indexedChars = bufBase;
+        resolvedStamp = -1;
+        ch = readChar();
+        if (ch == '\n') {
+            textPosition.line++;
+        }
+        lineExtra = ch == '\n' ? 1 : 0;
+        abChar = abTable[ch];
+        tokBuffer.pos.setPosXY(1,1);
+        if (recorder != null) {
+            recorder.start(curCharOffset());
+        }
+    }
+
+    /**
+     * Открытие массива символов без копирования и без начала разбора. Позиция задается start, startAt или restoreState
+     * @param text - символы текста
+     * @param length - количество символов текста в начале массива
+     */
+    void openChars(char[] text, int length) {
+        this.textReader = null;
+        this.mappedInput = null;
+        buf = text;
+        bufLen = length;
+        bufBase = 0;
+    }
+
+    /**
+     * Открытие потока, читающего текст со смещения base, без начала разбора. Позиция задается restoreState
+     * с состоянием, которому нужен текст не раньше base
+     * @param reader - поток символов текста начиная со смещения base
+     * @param base - смещение первого символа потока в тексте
+     */
+    void openReader(Reader reader, long base) {
+        this.textReader = reader;
+        this.mappedInput = null;
+        if (readBuffer==null) {
+            readBuffer = new char[BUFFER_SIZE];
+        }
+        buf = readBuffer;
+        bufLen = 0;
+        bufPos = 0;
+        bufBase = base;
+    }
+
+    /**
+     * Открытие общего для нескольких токенайзеров отображаемого файла без начала разбора.
+     * Канал закрывает его владелец, close() для такого токенайзера не вызывается. Позиция задается startAt или restoreState
+     * @param channel - канал файла
+     * @param utf8 - байты файла в кодировке utf-8, иначе однобайтовая кодировка
+     * @throws IOException
+     */
+    void openMapped(FileChannel channel, boolean utf8) throws IOException {
+        closeChannel();
+        this.textReader = null;
+        buf = EMPTY_BUFFER;
+        bufLen = 0;
+        bufBase = 0;
+        mappedChannel = channel;
+        ownChannel = false;
+        mappedSize = channel.size();
+        mappedUtf8 = utf8;
+        charCount = 0;
+        mappedBase = 0;
+        mappedPos = 0;
+        mapWindow(0);
+    }
+
+    /**
+     * Начало разбора с заданного смещения в начальном состоянии, как с начала потока.
+     * Позиция первого символа считается равной (1,1)
+     * @param offset - смещение символа, с которого начинается разбор
+     * @throws IOException
+     */
+    void startAt(long offset) throws IOException {
+        seek(offset, offset);
+        state=Const.RS_STATE_ALFA;
+        bufIndex=1;
+        tokBuffer = new Token();
+        tokBuffer.state = Const.RS_STATE_ALFA;
+        tokBuffer.start = offset;
+        tokBuffer.charStart = offset;
+        tokBuffer.pos.setPosXY(1,1);
+        tokTokenBuffer.length = 0;
+        textPosition = new Position(1,1);
+        ch = readChar();
+        abChar = abTable[ch];
+        if (recorder != null) {
+            recorder.start(offset);
+        }
+    }
+
+    /**
+     * Установка позиции чтения: следующий прочитанный символ будет взят со смещения next
+     * @param next - смещение следующего символа
+     * @param mark - смещение начала текста, который еще нужен токенам, не больше next
+     * @throws IOException
+     */
+    private void seek(long next, long mark) throws IOException {
+        if (mappedInput!=null) {
+            if (mappedChannel!=null) {
+                mappedBase = mark;
+                mappedPos = 0;
+                mapWindow(mark);
+            }
+            mappedPos = (int) (next - mappedBase);
+            pendingChar = 0;
+            charCount = next;
+        }
+        else if (textReader!=null) {
+            // поток открыт со смещения bufBase, буфер дочитывается до позиции next
+            bufPos = (int) (next - bufBase);
+            while (bufLen < bufPos) {
+                if (bufLen == buf.length) {
+                    buf = readBuffer = Arrays.copyOf(buf, Math.max(bufPos, buf.length * 2));
+                }
+                int count = textReader.read(buf, bufLen, buf.length - bufLen);
+                if (count<0) {
+                    bufPos = bufLen + 1;
+                    break;
+                }
+                bufLen += count;
+            }
+        }
+        else {
+            bufPos = (int) (next - bufBase);
+        }
+    }
+
+    /**
+     * Сохранение состояния разбора между токенами
+     * @param snapshot - объект, в который записывается состояние
+     */
+    void saveState(LexerState snapshot) {
+        snapshot.offset = curCharOffset();
+        snapshot.next = mappedInput!=null ? mappedBase + mappedPos : bufBase + bufPos;
+        snapshot.charOffset = curCharIndex();
+        snapshot.charNext = mappedInput!=null ? charCount : bufBase + bufPos;
+        snapshot.ch = ch;
+        snapshot.pending = pendingChar;
+        snapshot.state = state;
+        snapshot.bufIndex = bufIndex;
+        snapshot.tokStart = tokBuffer.start;
+        snapshot.tokCharStart = tokBuffer.charStart;
+        snapshot.tokLength = tokBuffer.length;
+        snapshot.tokState = tokBuffer.state;
+        snapshot.tokLine = tokBuffer.pos.line;
+        snapshot.tokCol = tokBuffer.pos.col;
+        snapshot.line = textPosition.line;
+        snapshot.col = textPosition.col;
+    }
+
+    /**
+     * Восстановление состояния разбора, сохраненного saveState для того же текста
+     * @param snapshot - сохраненное состояние
+     * @throws IOException
+     */
+    void restoreState(LexerState snapshot) throws IOException {
+        seek(snapshot.next, Math.min(snapshot.tokStart, snapshot.offset));
+        if (mappedInput!=null) {
+            chOffset = snapshot.offset;
+            pendingChar = snapshot.pending;
+            chCharOffset = snapshot.charOffset;
+            charCount = snapshot.charNext;
+        }
+        ch = snapshot.ch;
+        abChar = abTable[ch];
+        state = snapshot.state;
+        bufIndex = snapshot.bufIndex;
+        tokBuffer = new Token();
+        tokBuffer.start = snapshot.tokStart;
+        tokBuffer.charStart = snapshot.tokCharStart;
+        tokBuffer.length = snapshot.tokLength;
+        tokBuffer.state = snapshot.tokState;
+        tokBuffer.pos.setPosXY(snapshot.tokLine, snapshot.tokCol);
+        tokTokenBuffer.length = 0;
+        textPosition = new Position(snapshot.line, snapshot.col);
+        if (recorder != null) {
+            recorder.start(snapshot.offset);
+        }
+    }
+
+    /**
+     * Возвращает id ключевых слов и операторов
+     * @return копия таблицы слово - id
+     */
+    public HashMap<String, Integer> getWordsMap() {
+        return new HashMap<>(rules.getWordsMap());
+    }
+    public void close() throws IOException {
+        if (recorder != null) {
+            recorder.finish(curCharOffset());
+        }
+        if (textReader!=null) {
+            textReader.close();
+        }
+        if (mappedChannel!=null) {
+            mappedInput = null;
+            mappedArray = null;
+            closeChannel();
+        }
+    }
+
+    /**
+     * Закрытие канала файла предыдущего потока, если он открыт самим токенайзером
+     * @throws IOException
+     */
+    private void closeChannel() throws IOException {
+        FileChannel channel = mappedChannel;
+        boolean own = ownChannel;
+        mappedChannel = null;
+        ownChannel = false;
+        if (channel != null && own) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Сброс токенайзера перед повторным использованием: закрытие потока и освобождение ссылок на текст.
+     * Правила и буфер чтения сохраняются. Настройки владельца (метрики, таблица символов, ленивые позиции)
+     * сбрасываются как у нового токенайзера, итоги метрик добавляются при закрытии потока
+     * @throws IOException
+     */
+    void reset() throws IOException {
+        try {
+            close();
+        }
+        finally {
+            recorder = null;
+            symbols = null;
+            lazyPositions = false;
+            textReader = null;
+            mappedChannel = null;
+            ownChannel = false;
+            mappedInput = null;
+            mappedArray = null;
+            buf = EMPTY_BUFFER;
+            bufLen = 0;
+            bufPos = 0;
+            bufBase = 0;
+            tokTokenBuffer.length = 0;
+            tokTokenBuffer.state = Const.RS_FINISH;
+            skipIds.clear();
+            skipTypes.clear();
+            setSkipSpace(rules.isSkipSpace());
+        }
+    }
+    // текущее количество используемых буферов под токены. два значит заглянули вперед
+    private int bufIndex=1;
+    /**
+     * Чтение очередного токена из потока символов
+     * @return строка с текстом токена или null если поток символов закончился
+     * @throws IOException
+     */
+    public  String nextToken() throws IOException {
+        if (advance()<0) {
+            return null;
+        }
+        return tokenString();
+    }
+
+    /**
+     * Переход к очередному токену без создания строки с его текстом.
+     * Текст токена доступен через curTokenText() до следующего вызова advance() или nextToken()
+     * @return id токена или -1 если поток символов закончился
+     * @throws IOException
+     */
+    public int advance() throws IOException {
+        tokTokenBuffer.length=0;
+            tokTokenBuffer.pos.setPos(tokBuffer.pos);
+        int id = scan(state);
+        if (id >= 0 && skipMask[id]) {
+            id = skipTokens();
+        }
+        return recorder == null ? id : record(id);
+    }
+
+    /**
+     * Учет выданного токена в метриках, в конце потока итоги добавляются в метрики
+     * @param id - id токена или -1 если поток символов закончился
+     * @return id токена
+     */
+    private int record(int id) {
+        if (id >= 0) {
+            recorder.token(id, tokTokenBuffer.length, tokTokenBuffer.start);
+        }
+        else {
+            recorder.finish(curCharOffset());
+        }
+        return id;
+    }
+
+    /**
+     * Пропуск токенов по маске в цикле, без рекурсии. Текст пропущенных токенов не создается
+     * @return id первого непропускаемого токена или -1 если поток символов закончился
+     * @throws IOException
+     */
+    private int skipTokens() throws IOException {
+        int id;
+        do {
+            tokTokenBuffer.length=0;
+            tokTokenBuffer.pos.setPos(tokBuffer.pos);
+            id = scan(state);
+        }
+        while (id >= 0 && skipMask[id]);
+        return id;
+    }
+
+    /**
+     * Продолжение разбора, прерванного исключением потока при чтении символа внутри advance().
+     * Чтение повторяется, остальное состояние разбора к моменту чтения уже сохранено в полях
+     * @return id токена или -1 если поток символов закончился
+     * @throws IOException
+     */
+    int resume() throws IOException {
+        abChar = nextAlfabetChar();
+        int newState = stateTable.get(state, abChar);
+        state = newState;
+        int id = scan(newState);
+        if (id >= 0 && skipMask[id]) {
+            id = skipTokens();
+        }
+        return recorder == null ? id : record(id);
+    }
+
+    /**
+     * Работа автомата до выдачи токена
+     * @param newState - состояние, при 0 автомат уже закончил работу
+     * @return id токена или -1 если поток символов закончился
+     * @throws IOException
+     */
+    private int scan(int newState) throws IOException {
+        while (newState>0) {
+            switch (this.state) {
+                case Const.RS_READ : {
+                    tokBuffer.append(ch);
+                    abChar = nextAlfabetChar();
+                    newState = stateTable.get(state, abChar);
+                    state = newState;
+                    break;
+                }
+                case Const.RS_READ_LITERAL: {
+                    tokBuffer.append(ch);
+                    boolean[] loop = bodyLoop[state];
+                    if (loop != null) {
+                        skipBody(loop, bodyStops[state]);
+                    }
+                    abChar = nextAlfabetChar();
+                    newState = stateTable.get(state, abChar);
+                    state = newState;
+                    break;
+                }
+                case Const.RS_STATE_LITERAL:
+                case Const.RS_STATE_ALFA: {
+                    tokBuffer.setState(state);
+                    newState = stateTable.get(state, abChar);
+                    state = newState;
+                    break;
+                }
+                case Const.RS_TOKENEND: {
+                    newState = stateTable.get(state, abChar);
+                    state = newState;
+                    if (!tokTokenBuffer.isEmpty()) newState=Const.RS_FINISH;
+                    break;
+                }
+                case Const.RS_TOKENSTART: {
+                    tokTokenBuffer.addToken(tokBuffer);
+                    if (recorder != null) {
+                        recorder.promotions++;
+                    }
+                    tokenEnd = curCharOffset();
+                    startToken();
+                    newState = stateTable.get(state, abChar);
+                    tokBuffer.setState(newState);
+                    state = newState;
+
+                    bufIndex=2;
+                    break;
+                }
+                case Const.RS_BUFFERASTOKEN: {
+                    tokTokenBuffer.setToken(tokBuffer);
+                    if (recorder != null) {
+                        recorder.promotions++;
+                    }
+                    tokenEnd = curCharOffset();
+                    startToken();
+                    newState = stateTable.get(state, abChar);
+                    state = newState;
+                    newState=Const.RS_FINISH;
+                    bufIndex=2;
+                    break;
+                }
+                case Const.RS_FINISH: {
+                    break;
+                }
+                default : {
+                    if (abChar!=Const.AB_EOS) {
+                        tokBuffer.append(ch);
+                        boolean[] loop = bodyLoop[state];
+                        if (loop != null) {
+                            skipBody(loop, bodyStops[state]);
+                        }
+                    }
+                    tokBuffer.setState(state);
+                    abChar= nextAlfabetChar();
+                    newState = stateTable.get(state, abChar);
+                    state = newState;
+                }
+            }
+        }
+
+        if (bufIndex==1) {
+            tokTokenBuffer.setToken(tokBuffer);
+            tokenEnd = curCharOffset();
+            startToken();
+        }
+        tokenView.stamp++;
+
+        if (tokTokenBuffer.isEmpty())  {
+            tokTokenBuffer.state=Const.RS_FINISH;
+            return -1;
+        }
+        bufIndex=1;
+        return tokTokenBuffer.state;
+    }
+    /**
+     * Проход тела токена по петле состояния одним циклом по буферу, без переходов по таблице.
+     * Пройденные символы добавляются к токену, текущим символом становится последний из них,
+     * следующий символ читается как обычно. Проход останавливается на первом символе не из петли
+     * и на границе буфера
+     * @param loop - символы алфавита петли
+     * @param stops - байты остановки пословного просмотра или null
+     */
+    private void skipBody(boolean[] loop, long[] stops) {
+        int count = mappedInput==null ? skipCharBody(loop) : skipByteBody(loop, stops);
+        tokBuffer.length += count;
+    }
+
+    /**
+     * Проход тела токена в буфере символов
+     * @param loop - символы алфавита петли
+     * @return количество пройденных символов
+     */
+    private int skipCharBody(boolean[] loop) {
+        char[] chars = buf;
+        char[] table = abTable;
+        int start = bufPos;
+        int pos = start;
+        int end = bufLen;
+        char last = ch;
+        int line = textPosition.line;
+        int col = textPosition.col;
+        while (pos < end) {
+            char c = chars[pos];
+            if (!loop[table[c]]) {
+                break;
+            }
+            if (last == '\n') {
+                line++;
+                col = 0;
+            }
+            col++;
+            last = c;
+            pos++;
+        }
+        if (pos > start) {
+            bufPos = pos;
+            ch = last;
+            abChar = table[last];
+            textPosition.line = line;
+            textPosition.col = col;
+        }
+        return pos - start;
+    }
+
+    /**
+     * Проход тела токена в байтовом вводе. Байты без байтов остановки пропускаются по 8 за раз,
+     * байты многобайтовых последовательностей utf-8 оставляются обычному чтению
+     * @param loop - символы алфавита петли
+     * @param stops - байты остановки пословного просмотра или null
+     * @return количество пройденных байт, равное количеству символов
+     */
+    private int skipByteBody(boolean[] loop, long[] stops) {
+        if (pendingChar!=0) {
+            return 0;
+        }
+        char[] table = byteTable;
+        int start = mappedPos;
+        int pos = start;
+        int end = mappedFastLimit;
+        char last = ch;
+        int line = textPosition.line;
+        int col = textPosition.col;
+        while (pos < end) {
+            if (stops != null) {
+                int from = pos;
+                while (pos + 8 <= end && !hasStop(readLong(pos), stops)) {
+                    pos += 8;
+                }
+                if (pos > from) {
+                    // в пропущенных байтах нет перевода строки
+                    if (last == '\n') {
+                        line++;
+                        col = 0;
+                    }
+                    col += pos - from;
+                    last = (char) readByte(pos - 1);
+                }
+            }
+            // байты слова с байтом остановки по одному
+            int wordEnd = Math.min(pos + 8, end);
+            while (pos < wordEnd) {
+                int b = readByte(pos);
+                if ((b < 0 && mappedUtf8) || !loop[table[b & 0xFF]]) {
+                    end = pos;
+                    break;
+                }
+                if (last == '\n') {
+                    line++;
+                    col = 0;
+                }
+                col++;
+                last = (char) (b & 0xFF);
+                pos++;
+            }
+        }
+        int count = pos - start;
+        if (count > 0) {
+            mappedPos = pos;
+            chOffset = mappedBase + pos - 1;
+            charCount += count;
+            chCharOffset = charCount - 1;
+            ch = last;
+            abChar = abTable[last];
+            textPosition.line = line;
+            textPosition.col = col;
+        }
+        return count;
+    }
+
+    /**
+     * Байт байтового ввода
+     * @param index - индекс байта в окне
+     * @return байт со знаком
+     */
+    private int readByte(int index) {
+        return mappedArray!=null ? mappedArray[mappedArrayOffset + index] : mappedInput.get(index);
+    }
+
+    /**
+     * 8 байт байтового ввода одним словом, порядок байт в слове не важен
+     * @param index - индекс первого байта в окне
+     * @return слово
+     */
+    private long readLong(int index) {
+        return mappedArray!=null ? (long) LONG_VIEW.get(mappedArray, mappedArrayOffset + index) : mappedInput.getLong(index);
+    }
+
+    /**
+     * Есть ли в слове байт не ASCII или байт остановки
+     * @param word - 8 байт
+     * @param stops - байты остановки, размноженные на 8 байт
+     * @return true если есть
+     */
+    private static boolean hasStop(long word, long[] stops) {
+        if ((word & HIGH_BITS) != 0) {
+            return true;
+        }
+        for (long stop : stops) {
+            // байты слова меньше 0x80, поэтому проверка нулевого байта точная
+            long x = word ^ stop;
+            if (((x - LOW_BITS) & ~x & HIGH_BITS) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Начало нового токена в буфере заглядывания с текущего символа. При ленивых позициях позиция не копируется
+     */
+    private void startToken() {
+        if (lazyPositions) {
+            tokBuffer.setStart(tokenEnd, curCharIndex());
+        }
+        else {
+            tokBuffer.setStartToken(textPosition, tokenEnd, curCharIndex());
+        }
+    }
+
+    /**
+     * Чтение пакета токенов в параллельные массивы. Заполняет пакет с начала, пока он не заполнится
+     * или не закончится поток символов. Текст токенов не создается
+     * @param batch - переиспользуемый пакет токенов
+     * @return количество прочитанных токенов, 0 если поток символов закончился
+     * @throws IOException
+     */
+    public int nextTokens(TokenBatch batch) throws IOException {
+        int capacity = batch.capacity();
+        int n = 0;
+        while (n < capacity) {
+            int id = advance();
+            if (id < 0) {
+                break;
+            }
+            putToken(batch, n++, id, 0);
+        }
+        batch.size = n;
+        return n;
+    }
+
+    /**
+     * Оставшиеся токены текущего потока символов как ленивый последовательный Stream.
+     * Токенайзер продвигается при обходе потока, одновременно с ним токенайзер не используется
+     * @return поток токенов
+     */
+    public Stream<TokenRecord> tokens() {
+        return TokenSpliterator.records(new TokenSpliterator.Cursor(this, null, null, inputLength()));
+    }
+
+    /**
+     * Оставшиеся токены текущего потока символов как ленивый последовательный поток id токенов
+     * @return поток id токенов
+     */
+    public IntStream tokenIds() {
+        return TokenSpliterator.ids(new TokenSpliterator.Cursor(this, null, null, inputLength()));
+    }
+
+    /**
+     * Длина входного текста, если она известна без чтения
+     * @return количество символов, для отображенного файла байт, или -1 для потока
+     */
+    private long inputLength() {
+        if (mappedInput!=null) {
+            return mappedSize;
+        }
+        return textReader==null ? bufBase + bufLen : -1;
+    }
+
+    /**
+     * Запись текущего токена в пакет
+     * @param batch - пакет токенов
+     * @param n - индекс токена в пакете
+     * @param id - id токена
+     * @param lineShift - сдвиг номера строки
+     */
+    void putToken(TokenBatch batch, int n, int id, int lineShift) {
+        batch.id[n] = id;
+        batch.type[n] = tokenTypeOrdinal[id];
+        batch.offset[n] = tokTokenBuffer.start;
+        batch.length[n] = tokTokenBuffer.length;
+        batch.line[n] = curLine() + lineShift;
+        batch.col[n] = curPos();
+    }
+    /**
+     * Возвращает строку текущего токена
+     * @return токен
+     */
+    public String curToken() {
+        return tokenString();
+    }
+
+    /**
+     * Строка текущего токена. Для ключевых слов и операторов, текст которых совпадает с правилом,
+     * возвращается каноническая строка правила без создания новой
+     * @return токен
+     */
+    private String tokenString() {
+        int id = tokTokenBuffer.state;
+        String word = wordText[id];
+        if (word != null && tokenView.sameText(word)) {
+            return word;
+        }
+        if (symbols != null && tokenType[id] == TokenType.word) {
+            return symbols.symbol(curSymbol());
+        }
+        return tokenView.toString();
+    }
+
+    /**
+     * Возвращает id символа текущего токена-слова в таблице символов. Новое слово добавляется в таблицу.
+     * Текст слова хешируется прямо во входном буфере, строка создается только для нового символа
+     * @return id символа или -1 если токен не слово или таблица символов не задана
+     */
+    public int curSymbol() {
+        if (symbols == null || tokTokenBuffer.length == 0 || tokenType[tokTokenBuffer.state] != TokenType.word) {
+            return -1;
+        }
+        if (mappedInput==null) {
+            return symbols.add(buf, (int) (tokTokenBuffer.start - bufBase), tokTokenBuffer.length);
+        }
+        return symbols.add(tokenView, 0, tokTokenBuffer.length);
+    }
+
+    /**
+     * Возвращает текст текущего токена без копирования. Объект переиспользуется, его содержимое
+     * меняется при следующем вызове advance() или nextToken()
+     * @return текст токена
+     */
+    public CharSequence curTokenText() {
+        return tokenView;
+    }
+
+    /**
+     * Вовзращает смещение начала последнего прочитаного токена от начала потока.
+     * Для отображенного в память файла и байтового ввода смещение в байтах, иначе в символах
+     * @return смещение токена
+     */
+    public long curTokenOffset() {
+        return tokTokenBuffer.start;
+    }
+
+    /**
+     * Вовзращает смещение начала последнего прочитаного токена от начала потока в символах.
+     * Для символьного ввода совпадает с curTokenOffset(). Для байтового ввода символы считаются
+     * от начала разбора, при разборе с произвольного смещения startAt байты до него считаются символами
+     * @return смещение токена в символах
+     */
+    public long curTokenCharOffset() {
+        return tokTokenBuffer.charStart;
+    }
+
+    /**
+     * Смещение конца текста последнего прочитанного токена, в тех же единицах что curTokenOffset()
+     * @return смещение конца токена
+     */
+    long curTokenEnd() {
+        return tokenEnd;
+    }
+
+    /**
+     * Вовзращает длину последнего прочитаного токена в символах
+     * @return длина токена
+     */
+    public int curTokenLength() {
+        return tokTokenBuffer.length;
+    }
+    /**
+     * Возвращает тип последнего прочитанного токена
+     * @return тип токена
+     */
+    public TokenType curTokenType() {
+        return tokenType[tokTokenBuffer.state];
+    }
+    /**
+     * Вовзращает номер строки для последнего прочитаного токенаю Номера строк начинаются с 0
+     * @return номер строки
+     */
+    public int curLine() {
+        if (lazyPositions) {
+            resolvePosition();
+            return resolvedLine;
+        }
+        return tokTokenBuffer.pos.line;
+    }
+    /**
+     * Вовзращает позцию в cтроке  для последнего прочитаного токенаю
+     * @return позция в строке
+     */
+    public int curPos() {
+        if (lazyPositions) {
+            resolvePosition();
+            return resolvedCol;
+        }
+        return tokTokenBuffer.pos.col;
+    }
+
+    /**
+     * Вычисление строки и позиции текущего токена по индексу начал строк, один раз на токен
+     */
+    private void resolvePosition() {
+        if (resolvedStamp == tokenView.stamp) {
+            return;
+        }
+        long offset = tokTokenBuffer.charStart;
+        int line = lineOf(offset);
+        resolvedLine = line;
+        resolvedCol = (int) (offset - lineStart(line) + 1);
+        resolvedStamp = tokenView.stamp;
+    }
+
+    /**
+     * Строка и позиция в строке символа по его смещению. Доступно для прочитанного текста в режиме ленивых позиций
+     * @param offset - смещение символа в символах, для байтового ввода как curTokenCharOffset()
+     * @return строка и позиция символа
+     */
+    public LineCol lineColOf(long offset) {
+        int line = lineOf(offset);
+        return new LineCol(line, (int) (offset - lineStart(line) + 1));
+    }
+
+    /**
+     * Строка символа по его смещению. Доступно для прочитанного текста в режиме ленивых позиций
+     * @param offset - смещение символа в символах, для байтового ввода как curTokenCharOffset()
+     * @return номер строки
+     */
+    public int lineOf(long offset) {
+        if (!lazyPositions) {
+            throw new IllegalStateException("Line index requires lazy positions");
+        }
+        indexLines(offset, Long.MAX_VALUE);
+        // количество начал строк не больше offset
+        int low = 0;
+        int high = lineCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lineStarts[mid] <= offset) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return 1 + low + lineExtra;
+    }
+
+    /**
+     * Смещение первого символа строки
+     * @param line - номер строки, как у lineOf
+     * @return смещение в символах
+     */
+    private long lineStart(int line) {
+        int index = line - 1 - lineExtra;
+        return index == 0 ? 0 : lineStarts[index - 1];
+    }
+
+    /**
+     * Поиск начал строк в прочитанном тексте от места предыдущего поиска
+     * @param charTarget - смещение в символах, до которого нужен индекс
+     * @param inputTarget - смещение во входном тексте, до которого нужен индекс
+     */
+    private void indexLines(long charTarget, long inputTarget) {
+        if (mappedInput==null) {
+            // для символьного ввода смещения во входном тексте и в символах совпадают
+            long end = Math.min(Math.min(charTarget, inputTarget), bufBase + Math.min(bufPos, bufLen));
+            for (long o = indexedTo; o < end; o++) {
+                if (buf[(int) (o - bufBase)] == '\n') {
+                    addLineStart(o + 1);
+                }
+            }
+            if (end > indexedTo) {
+                indexedTo = end;
+                indexedChars = end;
+            }
+            return;
+        }
+        int pos = (int) (indexedTo - mappedBase);
+        int limit = (int) Math.min(mappedPos, inputTarget - mappedBase);
+        long chars = indexedChars;
+        while (chars < charTarget && pos < limit) {
+            int b = mappedInput.get(pos);
+            if (b >= 0 || !mappedUtf8) {
+                chars++;
+                pos++;
+                if (b == '\n') {
+                    addLineStart(chars);
+                }
+                continue;
+            }
+            // как в readMapped: некорректный байт - один символ, символ вне BMP - два
+            int count = utf8Length(b);
+            int cp = decodeUtf8(mappedInput, pos, mappedLimit, count);
+            if (cp < 0) {
+                chars++;
+                pos -= cp;
+            }
+            else {
+                chars += cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT ? 2 : 1;
+                pos += count;
+            }
+        }
+        indexedTo = mappedBase + pos;
+        indexedChars = chars;
+    }
+
+    private void addLineStart(long offset) {
+        if (lineCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+        }
+        lineStarts[lineCount++] = offset;
+    }
+    /**
+     * Вовзращает id токена
+     * @return id типа токена
+     */
+    public int curTokenId() {
+        return tokTokenBuffer.state;
+    }
+    /**
+     * получить текущий символ алфавита
+     * @return символ алфавита
+     * @throws IOException
+     */
+    public int nextAlfabetChar() throws IOException {
+        if (mappedInput!=null) {
+            return nextByteAlfabetChar();
+        }
+        // символ читается до изменения позиции, чтобы прерванное потоком чтение можно было повторить
+        char next = readChar();
+        if (!lazyPositions) {
+            if (ch == '\n') {
+                textPosition.line++;
+                textPosition.col=0;
+            }
+            textPosition.col++;
+        }
+        ch = next;
+        abChar = abTable[ch];
+        return abChar;
+    }
+
+    /**
+     * Переход к следующему символу байтового ввода. Байты ASCII и однобайтовых кодировок переводятся
+     * во внутренний алфавит по таблице байт без декодирования, остальное читает readMapped
+     * @return символ алфавита
+     * @throws IOException
+     */
+    private int nextByteAlfabetChar() throws IOException {
+        int pos = mappedPos;
+        char next;
+        int nextAbChar;
+        int b;
+        if (pos < mappedFastLimit && pendingChar==0
+                && ((b = mappedArray!=null ? mappedArray[mappedArrayOffset + pos] : mappedInput.get(pos)) >= 0 || !mappedUtf8)) {
+            b &= 0xFF;
+            mappedPos = pos + 1;
+            chOffset = mappedBase + pos;
+            chCharOffset = charCount++;
+            next = (char) b;
+            nextAbChar = byteTable[b];
+        }
+        else {
+            next = readMapped();
+            nextAbChar = abTable[next];
+        }
+        if (!lazyPositions) {
+            if (ch == '\n') {
+                textPosition.line++;
+                textPosition.col=0;
+            }
+            textPosition.col++;
+        }
+        ch = next;
+        abChar = nextAbChar;
+        return nextAbChar;
+    }
+
+    /**
+     * Чтение очередного символа из буфера, отображенного файла или потока
+     * @return символ или '\uFFFF' если поток закончился
+     * @throws IOException
+     */
+    private char readChar() throws IOException {
+        if (bufPos < bufLen) {
+            return buf[bufPos++];
+        }
+        return mappedInput!=null ? readMapped() : fillBuffer();
+    }
+
+    /**
+     * Смещение текущего символа от начала потока, в байтах для отображенного файла
+     * @return смещение символа
+     */
+    private long curCharOffset() {
+        return mappedInput!=null ? chOffset : bufBase + bufPos - 1;
+    }
+
+    /**
+     * Смещение текущего символа от начала потока в символах
+     * @return смещение символа
+     */
+    private long curCharIndex() {
+        return mappedInput!=null ? chCharOffset : bufBase + bufPos - 1;
+    }
+
+    /**
+     * Смещение начала текста, который еще нужен токенам. Символы до этого смещения можно вытеснять из буфера
+     * @return смещение
+     */
+    private long markOffset() {
+        return tokTokenBuffer.isEmpty() ? tokBuffer.start : tokTokenBuffer.start;
+    }
+
+    /**
+     * Чтение символа из отображенного файла. Символы ASCII и однобайтовых кодировок берутся прямо из байта
+     * @return символ или '\uFFFF' если файл закончился
+     * @throws IOException
+     */
+    private char readMapped() throws IOException {
+        if (pendingChar!=0) {
+            char low = pendingChar;
+            pendingChar = 0;
+            chOffset = mappedBase + mappedPos;
+            chCharOffset = charCount++;
+            return low;
+        }
+        if (mappedLimit - mappedPos < 4 && mappedBase + mappedLimit < mappedSize) {
+            // в окне должна помещаться целиком последовательность utf-8, окно сдвигаем к началу текущего токена
+            long mark = markOffset();
+            if (lazyPositions) {
+                // начала строк ищутся до вытеснения текста из окна
+                indexLines(Long.MAX_VALUE, mappedBase + mappedPos);
+            }
+            if (mappedBase + mappedPos - mark > mapWindowSize - 4) {
+                throw new IOException("Token is too long for mapped window: " + (mappedBase + mappedPos - mark));
+            }
+            mapWindow(mark);
+        }
+        chOffset = mappedBase + mappedPos;
+        if (mappedPos >= mappedLimit) {
+            chCharOffset = charCount;
+            return '\uFFFF';
+        }
+        chCharOffset = charCount++;
+        int b = mappedInput.get(mappedPos);
+        if (b >= 0 || !mappedUtf8) {
+            mappedPos++;
+            return (char) (b & 0xFF);
+        }
+        int count = utf8Length(b);
+        int cp = decodeUtf8(mappedInput, mappedPos, mappedLimit, count);
+        if (cp < 0) {
+            mappedPos -= cp;
+            return '\uFFFD';
+        }
+        mappedPos += count;
+        if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            pendingChar = Character.lowSurrogate(cp);
+            return Character.highSurrogate(cp);
+        }
+        return (char) cp;
+    }
+
+    /**
+     * Длина последовательности utf-8 по первому байту
+     * @param b0 - первый байт последовательности
+     * @return количество байт последовательности или 0 для некорректного первого байта
+     */
+    static int utf8Length(int b0) {
+        b0 &= 0xFF;
+        if (b0 < 0x80) return 1;
+        if (b0 < 0xC0) return 0;
+        if (b0 < 0xE0) return 2;
+        if (b0 < 0xF0) return 3;
+        if (b0 < 0xF8) return 4;
+        return 0;
+    }
+
+    /**
+     * Декодирование многобайтовой последовательности utf-8. Некорректные последовательности заменяются
+     * так же, как в декодере jdk, чтобы байтовый ввод давал те же символы, что и строка из этих байт:
+     * избыточные формы, суррогаты и коды больше U+10FFFF отвергаются, незаконченная последовательность
+     * считается одним символом
+     * @param bytes - буфер байт
+     * @param index - индекс первого байта последовательности
+     * @param limit - граница данных в буфере
+     * @param count - длина последовательности
+     * @return код символа или минус количество байт, заменяемых одним символом U+FFFD
+     */
+    static int decodeUtf8(ByteBuffer bytes, int index, int limit, int count) {
+        int b0 = bytes.get(index) & 0xFF;
+        if (count < 2 || b0 < 0xC2 || b0 > 0xF4) {
+            return -1;
+        }
+        // диапазон второго байта отсекает коды меньше 0x800 и 0x10000 для своей длины и больше U+10FFFF
+        int low = b0 == 0xE0 ? 0xA0 : b0 == 0xF0 ? 0x90 : 0x80;
+        int high = b0 == 0xF4 ? 0x8F : 0xBF;
+        int cp = b0 & (0x7F >> count);
+        for (int i=1;i<count;i++) {
+            if (index + i >= limit) {
+                return -i;
+            }
+            int b = bytes.get(index + i) & 0xFF;
+            if ((b & 0xC0) != 0x80 || i == 1 && (b < low || b > high)) {
+                return -i;
+            }
+            cp = (cp << 6) | (b & 0x3F);
+        }
+        // суррогат D800-DFFF заменяется целиком
+        return cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE ? -count : cp;
+    }
+
+    /**
+     * Заполнение буфера очередным блоком символов из потока. Текст незаконченных токенов сохраняется
+     * в начале буфера, если он занимает весь буфер то буфер увеличивается
+     * @return первый символ нового блока или '\uFFFF' если поток закончился
+     * @throws IOException
+     */
+    private char fillBuffer() throws IOException {
+        if (textReader==null || bufPos > bufLen) {
+            bufPos = bufLen + 1;
+            return '\uFFFF';
+        }
+        int keep = (int) (markOffset() - bufBase);
+        if (keep > 0 && lazyPositions) {
+            // начала строк ищутся до вытеснения текста из буфера
+            indexLines(Long.MAX_VALUE, bufBase + keep);
+        }
+        if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, bufLen - keep);
+            bufBase += keep;
+            bufLen -= keep;
+            bufPos = bufLen;
+        }
+        else if (bufLen == buf.length) {
+            buf = readBuffer = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int count;
+        do {
+            count = textReader.read(buf, bufLen, buf.length - bufLen);
+        } while (count==0);
+        if (count<0) {
+            bufPos = bufLen + 1;
+            return '\uFFFF';
+        }
+        bufPos = bufLen + 1;
+        bufLen += count;
+        return buf[bufPos - 1];
+    }
+
+    /**
+     * Текст текущего токена как диапазон входного буфера
+     */
+    private final class TokenView implements CharSequence {
+        // номер токена, для которого заполнен буфер декодированных символов
+        int stamp;
+        private int decodedStamp = -1;
+        private char[] decoded = new char[64];
+        private byte[] bytes = new byte[64];
+
+        @Override
+        public int length() {
+            return tokTokenBuffer.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= tokTokenBuffer.length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + tokTokenBuffer.length);
+            }
+            if (mappedInput==null) {
+                return buf[(int) (tokTokenBuffer.start - bufBase) + index];
+            }
+            if (!mappedUtf8) {
+                return (char) (mappedInput.get((int) (tokTokenBuffer.start - mappedBase) + index) & 0xFF);
+            }
+            return decode()[index];
+        }
+
+        /**
+         * Сравнение текста токена со строкой без создания строки токена. Нужно при ignoreCase,
+         * когда id ключевого слова не определяет регистр его букв
+         * @param text - строка
+         * @return true если текст токена совпадает со строкой
+         */
+        boolean sameText(String text) {
+            int length = tokTokenBuffer.length;
+            if (text.length() != length) {
+                return false;
+            }
+            if (mappedInput==null) {
+                int from = (int) (tokTokenBuffer.start - bufBase);
+                for (int i=0;i<length;i++) {
+                    if (buf[from + i] != text.charAt(i)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            for (int i=0;i<length;i++) {
+                if (charAt(i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            if (mappedInput==null) {
+                return new String(buf, (int) (tokTokenBuffer.start - bufBase), tokTokenBuffer.length);
+            }
+            if (!mappedUtf8) {
+                int from = (int) (tokTokenBuffer.start - mappedBase);
+                int count = (int) (tokenEnd - tokTokenBuffer.start);
+                if (mappedArray!=null) {
+                    return new String(mappedArray, mappedArrayOffset + from, count, StandardCharsets.ISO_8859_1);
+                }
+                if (bytes.length < count) {
+                    bytes = new byte[Math.max(count, bytes.length * 2)];
+                }
+                mappedInput.get(from, bytes, 0, count);
+                return new String(bytes, 0, count, StandardCharsets.ISO_8859_1);
+            }
+            // строка строится тем же декодером, что и charAt, чтобы на некорректных байтах они совпадали
+            return new String(decode(), 0, tokTokenBuffer.length);
+        }
+
+        /**
+         * Декодирование текста токена из отображенного файла в переиспользуемый буфер
+         * @return буфер символов токена
+         */
+        private char[] decode() {
+            if (decodedStamp == stamp) {
+                return decoded;
+            }
+            int length = tokTokenBuffer.length;
+            if (decoded.length < length) {
+                decoded = new char[Math.max(length, decoded.length * 2)];
+            }
+            int index = (int) (tokTokenBuffer.start - mappedBase);
+            int n = 0;
+            while (n < length) {
+                int b = mappedInput.get(index);
+                if (b >= 0 || !mappedUtf8) {
+                    decoded[n++] = (char) (b & 0xFF);
+                    index++;
+                    continue;
+                }
+                int count = utf8Length(b);
+                int cp = decodeUtf8(mappedInput, index, mappedLimit, count);
+                if (cp < 0) {
+                    decoded[n++] = '\uFFFD';
+                    index -= cp;
+                }
+                else if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    decoded[n++] = Character.highSurrogate(cp);
+                    if (n < length) {
+                        decoded[n++] = Character.lowSurrogate(cp);
+                    }
+                    index += count;
+                }
+                else {
+                    decoded[n++] = (char) cp;
+                    index += count;
+                }
+            }
+            decodedStamp = stamp;
+            return decoded;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * События JFR токенайзера, создаются только при включенных метриках
+ * @see TokenizerMetrics
+ */
+final class TokenizerEvents {
+    private TokenizerEvents() {
+    }
+
+    @Name("tokenaizer.LongToken")
+    @Label("Long Token")
+    @Category("Tokenaizer")
+    @Description("Token longer than TokenizerMetrics long token threshold")
+    static final class LongToken extends Event {
+        @Label("Token Id")
+        int id;
+
+        @Label("Token Type")
+        String tokenType;
+
+        @Label("Length")
+        int length;
+
+        @Label("Offset")
+        long offset;
+    }
+
+    @Name("tokenaizer.SlowStream")
+    @Label("Slow Stream")
+    @Category("Tokenaizer")
+    @Description("Stream tokenized longer than TokenizerMetrics slow stream threshold")
+    static final class SlowStream extends Event {
+        @Label("Chars")
+        @Description("Number of chars tokenized in the stream")
+        long chars;
+
+        @Label("Tokens")
+        long tokens;
+
+        @Label("Stream Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long streamDuration;
+    }
+}
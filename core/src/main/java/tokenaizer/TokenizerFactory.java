@@ -1,3 +1,5 @@
+package tokenaizer;
+
 import java.io.IOException;
 import java.util.*;
 
@@ -32,6 +34,16 @@ public class TokenizerFactory {
     private CharTreeNode spaceTree = new CharTreeNode();
     private boolean ignoreCase = false;
     private boolean skipSpace=true;
+    // правила в порядке добавления для вычисления отпечатка
+    private final RulesFingerprint.Builder fingerprint = new RulesFingerprint.Builder();
+    // кеш скомпилированных правил, null - компилировать всегда
+    private RulesCache cache;
+    // количество состояний автомата до и после минимизации, для отчета
+    private int initialStateCount;
+    private int stateCount;
+    // размер внутреннего алфавита до и после объединения символов в классы, для отчета
+    private int initialAlfabetSize;
+    private int alfabetSize;
 
 
     /**
@@ -53,6 +65,7 @@ public class TokenizerFactory {
     public TokenizerFactory addKeyword(String[] keywords) {
         for (String str : keywords) {
             addToCharTree(keyWords, str, TokenType.keyword);
+            fingerprint.add('K', str);
         }
         return this;
     }
@@ -67,6 +80,7 @@ public class TokenizerFactory {
     public TokenizerFactory addComment(String begin, String end) {
         addToCharTree(keyWords, begin, TokenType.comment);
         addToCharTree(endComments, end, TokenType.comment);
+        fingerprint.add('C', begin, end);
         return this;
     }
 
@@ -83,6 +97,7 @@ public class TokenizerFactory {
         for (char ch : spaces.toCharArray()) {
             addToCharTree(spaceTree, Character.toString(ch), TokenType.space);
         }
+        fingerprint.add('S', spaces);
 
         return this;
     }
@@ -107,6 +122,7 @@ public class TokenizerFactory {
         if (escape!=null && escape.length()>0) {
             addEscapeToCharTree(endLiteral, escStr, TokenType.literal);
         }
+        fingerprint.add('L', border, escape);
 
         return this;
     }
@@ -130,12 +146,56 @@ public class TokenizerFactory {
         return this;
     }
 
+    /**
+     * Использовать кеш скомпилированных правил. Если в кеше есть правила с тем же отпечатком,
+     * компиляция не выполняется и счетчики состояний и алфавита фабрики не заполняются
+     *
+     * @param cache - кеш, например RulesCache.shared(), или null
+     * @return this эземпляра фабрики
+     */
+    public TokenizerFactory setCache(RulesCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Отпечаток добавленных правил и признака ignoreCase
+     *
+     * @return отпечаток
+     */
+    public RulesFingerprint getFingerprint() {
+        return fingerprint.build(ignoreCase);
+    }
+
     /**
      * Создание нового экземпляра токенайзера
      *
      * @return токенайзер
      */
     public Tokenizer newTokenizer() {
+        return compile().newTokenizer();
+    }
+
+    /**
+     * Компиляция правил в неизменяемый вид. Правила разделяются любым количеством токенайзеров
+     * в разных потоках, см. CompiledRules.newTokenizer() и TokenizerPool.
+     * При заданном кеше правила берутся из кеша по отпечатку
+     *
+     * @return скомпилированные правила
+     */
+    public CompiledRules compile() {
+        if (cache != null) {
+            return cache.get(getFingerprint(), this::compileRules).withSkipSpace(skipSpace);
+        }
+        return compileRules();
+    }
+
+    /**
+     * Компиляция правил: построение и минимизация автомата, сжатие алфавита
+     *
+     * @return скомпилированные правила
+     */
+    private CompiledRules compileRules() {
         prepareAlfabet();
         initialize();
 
@@ -143,13 +203,50 @@ public class TokenizerFactory {
         compileComment();
         compileLiteral();
 
+        initialStateCount = stateSet.size();
+        stateSet.minimize(wordsMap);
+        stateCount = stateSet.size();
+
+        initialAlfabetSize = alfabet.length();
+        alfabet.remap(stateSet.compressAlfabet(alfabet.ab_eos));
+        alfabetSize = alfabet.length();
+
         TokenizerSetting setting = stateSet.getSetting(alfabet);
         setting.wordsMap=wordsMap;
 
-        Tokenizer tokenizer = new Tokenizer();
-        tokenizer.setSetting(setting);
-        tokenizer.setSkipSpace(skipSpace);
-        return tokenizer;
+        return CompiledRules.of(setting, skipSpace);
+    }
+
+    /**
+     * Количество состояний автомата до минимизации, заполняется в compile()
+     * @return количество состояний
+     */
+    public int getInitialStateCount() {
+        return initialStateCount;
+    }
+
+    /**
+     * Количество состояний скомпилированного автомата, заполняется в compile()
+     * @return количество состояний
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Размер внутреннего алфавита до объединения символов в классы, заполняется в compile()
+     * @return количество символов внутреннего алфавита
+     */
+    public int getInitialAlfabetSize() {
+        return initialAlfabetSize;
+    }
+
+    /**
+     * Размер внутреннего алфавита скомпилированного автомата (ширина таблицы переходов), заполняется в compile()
+     * @return количество символов внутреннего алфавита
+     */
+    public int getAlfabetSize() {
+        return alfabetSize;
     }
 
     private void addEscapeToCharTree(CharTreeNode startNode, String str, TokenType tokenType) {
@@ -199,6 +296,7 @@ public class TokenizerFactory {
 
         if (curNode.isFinal) {
             state.link(alfabet, stateSet.stateEndToken);
+            stateSet.endStates.add(state);
         }
         for (CharTreeNode node : curNode.getChildren()) {
             addCommentChar(node, state);
@@ -218,6 +316,7 @@ public class TokenizerFactory {
         if (curNode.isFinal) {
             if (!curNode.isEscape) {
                 state.link(alfabet, stateSet.stateEndToken);
+                stateSet.endStates.add(state);
             }
             if (curNode.isEscape) {
                 state.link(alfabet, stateSet.literalState);
@@ -390,6 +489,8 @@ class StateSet {
     public State stateAny;
 
     public State stateBufferAsToken;
+    // финальные состояния окончаний коментариев и литералов, их id - id токенов правил
+    public ArrayList<State> endStates = new ArrayList<>();
 
     public TokenizerSetting getSetting(Alfabet alfabet) {
         TokenizerSetting setting =new TokenizerSetting(alfabet,getTokenTypes(),getChangeState(),null);
@@ -409,16 +510,169 @@ class StateSet {
         items.add(state);
         return state;
     }
-    public int[][] getChangeState() {
-        int[][] changeState = new int [items.size()][stateSize];
+    public StateTable getChangeState() {
+        int[] changeState = new int [items.size()*stateSize];
 
         for (int i=0;i<items.size();i++) {
             State item = items.get(i);
             int[] itemChangeState = item.getChangeState();
-            changeState[i]=itemChangeState;
+            System.arraycopy(itemChangeState, 0, changeState, i*stateSize, stateSize);
+        }
+        return new StateTable(changeState, items.size(), stateSize);
+    }
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Минимизация автомата разбиением состояний на классы эквивалентности.
+     * Начальное разбиение: служебные состояния, финальные состояния ключевых слов и окончаний коментариев
+     * и литералов - каждое в своем классе, остальные по типу токена. Поэтому id токенов разных правил
+     * остаются различными, объединяются только промежуточные состояния правил.
+     * Классы дробятся по классам состояний-переходов, пока разбиение меняется.
+     * Из каждого класса остается состояние с наименьшим id, служебные состояния сохраняют свои id.
+     * @param wordsMap - словарь id ключевых слов, id пересчитываются на новые
+     */
+    public void minimize(HashMap<String,Integer> wordsMap) {
+        int count = items.size();
+        int[] block = new int[count];
+        HashSet<Integer> fixed = new HashSet<>(wordsMap.values());
+        for (State state : new State[] {rsFinish, rsStart, stateAny, wrtBuffer, stateEndToken, stateBufferAsToken,
+                commentState, literalState, spaceState, literalRead}) {
+            if (state!=null) fixed.add(state.id);
+        }
+        for (State state : endStates) {
+            fixed.add(state.id);
+        }
+        int blockCount = 0;
+        HashMap<Integer,Integer> typeBlocks = new HashMap<>();
+        for (int i=0;i<count;i++) {
+            if (fixed.contains(i)) {
+                block[i] = blockCount++;
+            }
+            else {
+                Integer typeBlock = typeBlocks.get(items.get(i).tokenType.ordinal());
+                if (typeBlock==null) {
+                    typeBlock = blockCount++;
+                    typeBlocks.put(items.get(i).tokenType.ordinal(), typeBlock);
+                }
+                block[i] = typeBlock;
+            }
+        }
+        int[] transition = getChangeState().toCells();
+        int[] signature = new int[stateSize+1];
+        while (true) {
+            HashMap<Signature,Integer> blocks = new HashMap<>();
+            int[] newBlock = new int[count];
+            for (int i=0;i<count;i++) {
+                signature[0] = block[i];
+                for (int j=0;j<stateSize;j++) {
+                    signature[j+1] = block[transition[i*stateSize+j]];
+                }
+                Signature key = new Signature(signature);
+                Integer id = blocks.get(key);
+                if (id==null) {
+                    id = blocks.size();
+                    blocks.put(new Signature(signature.clone()), id);
+                }
+                newBlock[i] = id;
+            }
+            block = newBlock;
+            if (blocks.size()==blockCount) break;
+            blockCount = blocks.size();
+            // все состояния различны, дробить дальше нечего
+            if (blockCount==count) break;
+        }
+        // представитель класса - состояние с наименьшим id, новые id в порядке представителей
+        State[] representative = new State[blockCount];
+        int[] blockId = new int[blockCount];
+        ArrayList<State> newItems = new ArrayList<>(blockCount);
+        for (int i=0;i<count;i++) {
+            if (representative[block[i]]==null) {
+                representative[block[i]] = items.get(i);
+                blockId[block[i]] = newItems.size();
+                newItems.add(items.get(i));
+            }
+        }
+        int[] newId = new int[count];
+        for (int i=0;i<count;i++) {
+            newId[i] = blockId[block[i]];
+        }
+        for (State state : newItems) {
+            for (int j=0;j<stateSize;j++) {
+                state.changeState.set(j, representative[block[state.changeState.get(j).id]]);
+            }
+        }
+        for (int i=0;i<newItems.size();i++) {
+            newItems.get(i).id = i;
+        }
+        wordsMap.replaceAll((word, id) -> newId[id]);
+        items = newItems;
+    }
+
+    /**
+     * Объединение символов внутреннего алфавита, переходы по которым совпадают во всех состояниях.
+     * Символ конца потока всегда остается отдельным классом, классы нумеруются в порядке первого символа,
+     * поэтому символы с фиксированными номерами сохраняют свои номера.
+     * Строки переходов состояний перестраиваются под новый алфавит
+     * @param ab_eos - символ конца потока
+     * @return класс для каждого символа старого алфавита
+     */
+    public int[] compressAlfabet(int ab_eos) {
+        int count = items.size();
+        int[] transition = getChangeState().toCells();
+        int[] classOf = new int[stateSize];
+        HashMap<Signature,Integer> classes = new HashMap<>();
+        int classCount = 0;
+        for (int j=0;j<stateSize;j++) {
+            if (j==ab_eos) {
+                classOf[j] = classCount++;
+                continue;
+            }
+            int[] column = new int[count];
+            for (int i=0;i<count;i++) {
+                column[i] = transition[i*stateSize+j];
+            }
+            Signature key = new Signature(column);
+            Integer abClass = classes.get(key);
+            if (abClass==null) {
+                abClass = classCount++;
+                classes.put(key, abClass);
+            }
+            classOf[j] = abClass;
+        }
+        for (State state : items) {
+            ArrayList<State> changeState = new ArrayList<>(java.util.Collections.nCopies(classCount, rsFinish));
+            for (int j=0;j<stateSize;j++) {
+                changeState.set(classOf[j], state.changeState.get(j));
+            }
+            state.changeState = changeState;
+        }
+        stateSize = classCount;
+        return classOf;
+    }
+
+    /**
+     * Ключ хештаблицы по массиву классов переходов состояния
+     */
+    private static class Signature {
+        private final int[] items;
+        private final int hash;
+
+        Signature(int[] items) {
+            this.items = items;
+            this.hash = Arrays.hashCode(items);
+        }
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Signature && Arrays.equals(items, ((Signature) o).items);
         }
-        return changeState;
     }
+
     public TokenType[] getTokenTypes() {
         TokenType [] tokenTypes = new TokenType[items.size()];
         for (int i=0;i<items.size();i++) {
@@ -456,7 +710,7 @@ class State {
         int [] result = new int [changeState.size()];
         for (int i=0;i<changeState.size();i++) {
             State item = changeState.get(i);
-            result[i]=item.id.byteValue();
+            result[i]=item.id;
         }
         return result;
     }
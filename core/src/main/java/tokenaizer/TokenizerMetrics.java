@@ -0,0 +1,306 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Метрики разбора, включаются вызовом Tokenizer.setMetrics. Один объект можно разделять между
+ * токенайзерами в разных потоках: токенайзер считает в собственных полях и добавляет итоги в общий объект
+ * по окончании потока символов или при close(). Без метрик токенайзер ничего не считает.
+ * Кроме счетчиков создаются события JFR: токен длиннее longTokenThreshold и поток дольше slowStreamMillis.
+ * </p>Пример использования: <pre>
+ *    TokenizerMetrics metrics = new TokenizerMetrics().register("sql");
+ *    tokenizer.setMetrics(metrics);
+ * </pre>
+ * Количество токенов по id имеет смысл, если все токенайзеры объекта работают по одним правилам
+ */
+public final class TokenizerMetrics implements TokenizerMetricsMXBean {
+    static final int DEFAULT_LONG_TOKEN = 1 << 16;
+    static final long DEFAULT_SLOW_STREAM_MILLIS = 1000;
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private volatile int longTokenThreshold = DEFAULT_LONG_TOKEN;
+    private volatile long slowStreamNanos = DEFAULT_SLOW_STREAM_MILLIS * 1_000_000;
+    // итоги, доступ под блокировкой this
+    private long streams;
+    private long chars;
+    private long tokens;
+    private final long[] tokensByType = new long[TOKEN_TYPES.length];
+    private long[] tokensById = new long[0];
+    private long promotions;
+    private int maxTokenLength;
+    private long streamNanos;
+    private long maxStreamNanos;
+
+    /**
+     * Регистрация метрик в платформенном MBeanServer под именем tokenaizer:type=TokenizerMetrics,name=...
+     * @param name - имя метрик
+     * @return метрики
+     */
+    public TokenizerMetrics register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("tokenaizer:type=TokenizerMetrics,name=" + ObjectName.quote(name)));
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics " + name, e);
+        }
+        return this;
+    }
+
+    /**
+     * Длина токена, начиная с которой создается событие JFR tokenaizer.LongToken.
+     * Действует сразу и для токенайзеров, уже подключенных через setMetrics
+     * @param length - длина в символах
+     * @return метрики
+     */
+    public TokenizerMetrics setLongTokenThreshold(int length) {
+        this.longTokenThreshold = length;
+        return this;
+    }
+
+    /**
+     * Время разбора потока, начиная с которого создается событие JFR tokenaizer.SlowStream
+     * @param millis - миллисекунды
+     * @return метрики
+     */
+    public TokenizerMetrics setSlowStreamMillis(long millis) {
+        this.slowStreamNanos = millis * 1_000_000;
+        return this;
+    }
+
+    /**
+     * Счетчики одного токенайзера
+     * @param rules - правила токенайзера
+     * @return счетчики
+     */
+    Recorder newRecorder(CompiledRules rules) {
+        return new Recorder(this, rules);
+    }
+
+    /**
+     * Добавление итогов потока
+     * @param recorder - счетчики токенайзера
+     * @param streamChars - количество прочитанных символов потока
+     * @param nanos - время разбора потока
+     */
+    private synchronized void add(Recorder recorder, long streamChars, long nanos) {
+        streams++;
+        chars += streamChars;
+        if (tokensById.length < recorder.tokensById.length) {
+            tokensById = Arrays.copyOf(tokensById, recorder.tokensById.length);
+        }
+        TokenType[] tokenType = recorder.tokenType;
+        for (int id = 0; id < recorder.tokensById.length; id++) {
+            long count = recorder.tokensById[id];
+            if (count != 0) {
+                tokens += count;
+                tokensById[id] += count;
+                tokensByType[tokenType[id].ordinal()] += count;
+            }
+        }
+        promotions += recorder.promotions;
+        maxTokenLength = Math.max(maxTokenLength, recorder.maxTokenLength);
+        streamNanos += nanos;
+        maxStreamNanos = Math.max(maxStreamNanos, nanos);
+    }
+
+    @Override
+    public synchronized long getStreams() {
+        return streams;
+    }
+
+    /**
+     * Количество прочитанных символов, для отображенных файлов байт
+     */
+    @Override
+    public synchronized long getChars() {
+        return chars;
+    }
+
+    /**
+     * Количество выданных токенов, без пропущенных
+     */
+    @Override
+    public synchronized long getTokens() {
+        return tokens;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getTokensByType() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (TokenType type : TOKEN_TYPES) {
+            result.put(type.name(), tokensByType[type.ordinal()]);
+        }
+        return result;
+    }
+
+    /**
+     * Количество выданных токенов по id
+     * @return массив, индекс - id токена
+     */
+    @Override
+    public synchronized long[] getTokensById() {
+        return tokensById.clone();
+    }
+
+    /**
+     * Количество переходов заглядывания вперед: RS_TOKENSTART и RS_BUFFERASTOKEN
+     */
+    @Override
+    public synchronized long getLookaheadPromotions() {
+        return promotions;
+    }
+
+    @Override
+    public synchronized int getMaxTokenLength() {
+        return maxTokenLength;
+    }
+
+    @Override
+    public synchronized long getTotalStreamMillis() {
+        return streamNanos / 1_000_000;
+    }
+
+    @Override
+    public synchronized long getMaxStreamMillis() {
+        return maxStreamNanos / 1_000_000;
+    }
+
+    @Override
+    public synchronized void reset() {
+        streams = 0;
+        chars = 0;
+        tokens = 0;
+        Arrays.fill(tokensByType, 0);
+        tokensById = new long[0];
+        promotions = 0;
+        maxTokenLength = 0;
+        streamNanos = 0;
+        maxStreamNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TokenizerMetrics{streams=" + streams + ", chars=" + chars + ", tokens=" + tokens
+                + ", promotions=" + promotions + ", maxTokenLength=" + maxTokenLength
+                + ", streamMillis=" + streamNanos / 1_000_000 + "}";
+    }
+
+    /**
+     * Счетчики текущего потока одного токенайзера, без синхронизации
+     */
+    static final class Recorder {
+        private final TokenizerMetrics metrics;
+        private final TokenType[] tokenType;
+        final long[] tokensById;
+        long promotions;
+        private int maxTokenLength;
+        // поток символов открыт и его итоги еще не добавлены
+        private boolean open;
+        private long startNanos;
+        private long startOffset;
+
+        private Recorder(TokenizerMetrics metrics, CompiledRules rules) {
+            this.metrics = metrics;
+            this.tokenType = rules.tokenType;
+            this.tokensById = new long[tokenType.length];
+        }
+
+        TokenizerMetrics metrics() {
+            return metrics;
+        }
+
+        boolean sameRules(CompiledRules rules) {
+            return tokenType == rules.tokenType;
+        }
+
+        /**
+         * Начало потока символов
+         * @param offset - смещение начала разбора
+         */
+        void start(long offset) {
+            if (open) {
+                // предыдущий поток не дочитан до конца
+                finish(offset);
+            }
+            open = true;
+            startOffset = offset;
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * Выданный токен
+         */
+        void token(int id, int length, long offset) {
+            tokensById[id]++;
+            if (length > maxTokenLength) {
+                maxTokenLength = length;
+            }
+            if (length >= metrics.longTokenThreshold) {
+                TokenizerEvents.LongToken event = new TokenizerEvents.LongToken();
+                if (event.shouldCommit()) {
+                    event.id = id;
+                    event.tokenType = tokenType[id].name();
+                    event.length = length;
+                    event.offset = offset;
+                    event.commit();
+                }
+            }
+        }
+
+        /**
+         * Окончание потока символов: итоги добавляются в общие метрики, счетчики обнуляются
+         * @param offset - смещение конца разбора
+         */
+        void finish(long offset) {
+            if (!open) {
+                return;
+            }
+            open = false;
+            long nanos = System.nanoTime() - startNanos;
+            long streamChars = Math.max(0, offset - startOffset);
+            metrics.add(this, streamChars, nanos);
+            if (nanos >= metrics.slowStreamNanos) {
+                TokenizerEvents.SlowStream event = new TokenizerEvents.SlowStream();
+                if (event.shouldCommit()) {
+                    event.chars = streamChars;
+                    long streamTokens = 0;
+                    for (long count : tokensById) {
+                        streamTokens += count;
+                    }
+                    event.tokens = streamTokens;
+                    event.streamDuration = nanos;
+                    event.commit();
+                }
+            }
+            Arrays.fill(tokensById, 0);
+            promotions = 0;
+            maxTokenLength = 0;
+        }
+    }
+}
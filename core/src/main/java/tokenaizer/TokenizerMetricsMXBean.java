@@ -0,0 +1,49 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.util.Map;
+
+/**
+ * Интерфейс JMX метрик разбора
+ * @see TokenizerMetrics#register(String)
+ */
+public interface TokenizerMetricsMXBean {
+    long getStreams();
+
+    long getChars();
+
+    long getTokens();
+
+    Map<String, Long> getTokensByType();
+
+    long[] getTokensById();
+
+    long getLookaheadPromotions();
+
+    int getMaxTokenLength();
+
+    long getTotalStreamMillis();
+
+    long getMaxStreamMillis();
+
+    void reset();
+}
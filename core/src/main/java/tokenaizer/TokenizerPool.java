@@ -0,0 +1,124 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул токенайзеров одних скомпилированных правил. Возвращенный в пул токенайзер закрывает свой поток
+ * и сохраняет буфер чтения, поэтому повторная выдача не создает объектов. Пул потокобезопасен,
+ * один токенайзер одновременно используется только одним потоком.
+ * </p>Пример использования: <pre>
+ *    TokenizerPool pool = new TokenizerPool(rules);
+ *    Tokenizer tokenizer = pool.acquire();
+ *    try {
+ *        tokenizer.openString(text);
+ *        while (tokenizer.advance() >= 0) {
+ *            ...
+ *        }
+ *    } finally {
+ *        pool.release(tokenizer);
+ *    }
+ * </pre>
+ * @see CompiledRules
+ */
+public class TokenizerPool {
+    private final CompiledRules rules;
+    // максимальное количество свободных токенайзеров в пуле, лишние отдаются сборщику мусора
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<Tokenizer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * Конструктор, в пуле хранится до 4 свободных токенайзеров на процессор
+     * @param rules - скомпилированные правила
+     */
+    public TokenizerPool(CompiledRules rules) {
+        this(rules, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Конструктор
+     * @param rules - скомпилированные правила
+     * @param maxIdle - максимальное количество свободных токенайзеров в пуле
+     */
+    public TokenizerPool(CompiledRules rules, int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("maxIdle must not be negative: " + maxIdle);
+        }
+        this.rules = rules;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Возвращает правила токенайзеров пула
+     * @return правила
+     */
+    public CompiledRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Выдача токенайзера из пула или нового, если свободных нет
+     * @return токенайзер без открытого потока
+     */
+    public Tokenizer acquire() {
+        Tokenizer tokenizer = idle.poll();
+        if (tokenizer == null) {
+            return rules.newTokenizer();
+        }
+        idleCount.decrementAndGet();
+        return tokenizer;
+    }
+
+    /**
+     * Возврат токенайзера в пул. Открытый поток токенайзера закрывается, метрики, таблица символов
+     * и ленивые позиции выключаются
+     * @param tokenizer - токенайзер, выданный этим пулом или созданный по тем же правилам
+     * @throws IOException ошибка закрытия потока, токенайзер при этом все равно возвращается в пул
+     */
+    public void release(Tokenizer tokenizer) throws IOException {
+        if (tokenizer.getRules() != rules) {
+            throw new IllegalArgumentException("Tokenizer was created by other rules");
+        }
+        try {
+            tokenizer.reset();
+        }
+        finally {
+            if (idleCount.incrementAndGet() <= maxIdle) {
+                idle.offer(tokenizer);
+            }
+            else {
+                idleCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Количество свободных токенайзеров в пуле
+     * @return количество
+     */
+    public int idleCount() {
+        return idleCount.get();
+    }
+}
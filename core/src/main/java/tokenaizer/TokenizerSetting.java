@@ -0,0 +1,175 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.annotations.JsonAdapter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Настройке токенайзера в компилированном виде.
+ */
+public class TokenizerSetting {
+    public HashMap<String,Integer> wordsMap;
+    HashMap<Character,Integer> alfabetaItems;
+    TokenType[]  tokenType;
+    @JsonAdapter(StateTable.GsonAdapter.class)
+    StateTable stateTable;
+
+    public TokenizerSetting() {
+
+    }
+    public TokenizerSetting(Alfabet alfabeta, TokenType[] tokenType, StateTable stateChange, HashMap<String,Integer>  wordsMap) {
+        this(alfabeta.getItems(), tokenType, stateChange, wordsMap);
+    }
+    TokenizerSetting(HashMap<Character,Integer> alfabetaItems, TokenType[] tokenType, StateTable stateChange, HashMap<String,Integer>  wordsMap) {
+        this.alfabetaItems =alfabetaItems;
+        this.tokenType=tokenType;
+        this.stateTable =stateChange;
+        this.wordsMap=wordsMap;
+    }
+    /**
+     * Запись скомпилированных правил разбора в файл формата json
+     * @param fileName имя файла
+     * @throws IOException
+     */
+    public void save(String fileName) throws IOException {
+        Gson gson = new GsonBuilder()
+                .setPrettyPrinting()
+                .create();
+        FileWriter writer = new FileWriter(fileName);
+        writer.write(gson.toJson(this));
+        writer.close();
+    }
+    public void saveJavaScript(String fileName) throws IOException {
+        FileWriter writer = new FileWriter(fileName);
+
+        ArrayList<Character> keys = new ArrayList<>(alfabetaItems.keySet());
+        ArrayList<Integer> ValItems = new ArrayList(alfabetaItems.values());
+
+        writer.write("alfabetaItems = new ActiveXObject(\"Scripting.Dictionary\");\n");
+        writer.write(String.format("alfabetaItems.Add('\\u%04x',%d);\n",(int) keys.get(0),ValItems.get(0)));
+        for (int i=1;i< keys.size();i++) {
+            Character ch= keys.get(i);
+            if ((Character.isLetterOrDigit(ch) ||
+                    Character.getType(ch)==Character.OTHER_PUNCTUATION ||
+                    Character.getType(ch)==Character.START_PUNCTUATION ||
+                    Character.getType(ch)==Character.END_PUNCTUATION
+            )
+                    && !ch.equals('\'')
+            )
+            {
+                writer.write(String.format("alfabetaItems.Add('%c',%d);\n",ch,ValItems.get(i)));
+            }
+            else{
+                writer.write(String.format("alfabetaItems.Add('\\u%04x',%d);\n",(int)ch,ValItems.get(i)));
+            }
+        }
+        writer.write("\n");
+
+        ArrayList<String> wordsKey = new ArrayList<>(wordsMap.keySet());
+        ValItems = new ArrayList(wordsMap.values());
+
+        writer.write("wordsMap = new ActiveXObject(\"Scripting.Dictionary\");\n");
+
+        for (int i=0;i< wordsKey.size();i++) {
+            writer.write(String.format("alfabetaItems.Add(\"%s\",%d);\n",wordsKey.get(i),ValItems.get(i)));
+        }
+        writer.write("\n");
+
+        writer.write("stateTable=[\n");
+        for (int i=0;i<stateTable.stateCount;i++) {
+            writer.write("[");
+            for (int j=0;j<stateTable.alfabetSize;j++) {
+                writer.write(String.format("%3d",stateTable.get(i,j)));
+                if (j<stateTable.alfabetSize-1) {
+                    writer.write(",");
+                }
+            }
+            writer.write("]");
+            if (i<stateTable.stateCount-1) {
+                writer.write(",\n");
+            }
+        }
+        writer.write("\n];\n");
+        writer.write("tokenType=[\n");
+        for (int i=0;i<tokenType.length;i++) {
+            writer.write(String.format("\"%s\"",tokenType[i]));
+            if (i<tokenType.length-1) {
+                writer.write(",");
+            }
+            writer.write("\n");
+        }
+        writer.write("];\n");
+        writer.close();
+    }
+    /**
+     * Запись скомпилированных правил в двоичный файл. Формат описан в BinarySetting:
+     * заголовок с версией, плоская таблица переходов, алфавит, типы токенов, слова и контрольная сумма
+     * @param path путь к файлу
+     * @throws IOException
+     */
+    public void saveBinary(Path path) throws IOException {
+        BinarySetting.write(this, path);
+    }
+
+    /**
+     * Чтение скомпилированных правил из двоичного файла. Файл отображается в память, таблица переходов
+     * копируется целиком без разбора ячеек, время чтения определяется размером таблицы
+     * @param path путь к файлу
+     * @return настройки
+     * @throws IOException файл поврежден, другой версии или не является файлом правил
+     */
+    public static TokenizerSetting loadBinary(Path path) throws IOException {
+        return BinarySetting.read(path);
+    }
+
+    /**
+     * Чтение скомпилированных правил разбора из json файла через ридер
+     * @param reader имя файла
+     * @throws IOException
+     */
+    public static TokenizerSetting load(Reader reader) throws IOException {
+        Gson gson = new GsonBuilder()
+                .setPrettyPrinting()
+                .create();
+        TokenizerSetting setting = gson.fromJson(reader, TokenizerSetting.class);
+        return setting;
+    }
+    /**
+     * Чтение скомпилированных правил разбора из json файла
+     * @param fileName имя файла
+     * @throws IOException
+     */
+    public static TokenizerSetting load(String fileName) throws IOException {
+        try (FileReader reader = new FileReader(fileName)) {
+            return load(reader);
+        }
+    }
+
+}
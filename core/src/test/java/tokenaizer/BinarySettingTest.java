@@ -0,0 +1,212 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+package tokenaizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Двоичный формат правил: сохраненные правила читаются без изменений, поврежденный,
+ * укороченный или несогласованный файл и файл другой версии отвергаются с IOException
+ */
+class BinarySettingTest {
+    // смещения полей заголовка
+    private static final int VERSION = 4;
+    private static final int CELL_BYTES = 6;
+    private static final int STATE_COUNT = 8;
+    private static final int ALFABET_SIZE = 12;
+    private static final int TOKEN_TYPE_COUNT = 16;
+    private static final int ITEM_COUNT = 20;
+    private static final int WORD_COUNT = 24;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripKeepsRules() throws IOException {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            assertRoundTrip(TestTexts.rules(random).compile(), TestTexts.text(random, 2000), "seed " + seed);
+        }
+    }
+
+    @Test
+    void roundTripOfWideTables() throws IOException {
+        // больше 256 и больше 65536 состояний: ячейки таблицы в 2 и 4 байта
+        for (int count : new int[] {200, 14000}) {
+            Random random = new Random(count);
+            String[] keywords = new String[count];
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                char[] chars = new char[8];
+                for (int j = 0; j < chars.length; j++) {
+                    chars[j] = (char) ('a' + random.nextInt(26));
+                }
+                keywords[i] = new String(chars);
+                text.append(keywords[i], 0, 4 + i % 5).append(' ');
+            }
+            CompiledRules rules = TokenizerFactory.create().addKeyword(keywords).addSpace(" ").compile();
+            assertEquals(count == 200 ? 2 : 4, rules.stateTable.cellBytes());
+            assertRoundTrip(rules, text.toString(), "keywords " + count);
+        }
+    }
+
+    @Test
+    void flippedByteFails() throws IOException {
+        byte[] bytes = save(TokenizerFactory.create().addKeyword(new String[] {"begin", "end", ":="})
+                .addComment("/*", "*/").addLiteral("'", "\\").addSpace(" \n").compile());
+        Path path = dir.resolve("flipped.tkb");
+        Random random = new Random(1);
+        for (int i = 0; i < bytes.length; i++) {
+            byte[] flipped = bytes.clone();
+            flipped[i] ^= (byte) (1 << random.nextInt(8));
+            Files.write(path, flipped);
+            assertThrows(IOException.class, () -> TokenizerSetting.loadBinary(path), "byte " + i);
+        }
+    }
+
+    @Test
+    void truncatedFileFails() throws IOException {
+        byte[] bytes = save(TestTexts.rules(new Random(2)).compile());
+        Path path = dir.resolve("truncated.tkb");
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(path, Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> TokenizerSetting.loadBinary(path), "length " + length);
+        }
+        Files.write(path, Arrays.copyOf(bytes, bytes.length + 4));
+        assertThrows(IOException.class, () -> TokenizerSetting.loadBinary(path), "trailing bytes");
+    }
+
+    @Test
+    void otherVersionFails() throws IOException {
+        byte[] bytes = save(TestTexts.rules(new Random(3)).compile());
+        ByteBuffer.wrap(bytes).putShort(VERSION, (short) (BinarySetting.VERSION + 1));
+        IOException e = assertLoadFails(withChecksum(bytes));
+        assertTrue(e.getMessage().startsWith("Unsupported tokenizer setting version"), e.getMessage());
+        ByteBuffer.wrap(bytes).putInt(0, 0x7B226122);
+        e = assertLoadFails(withChecksum(bytes));
+        assertTrue(e.getMessage().startsWith("Not a tokenizer setting file"), e.getMessage());
+    }
+
+    @Test
+    void inconsistentSectionsFail() throws IOException {
+        CompiledRules rules = TokenizerFactory.create().addKeyword(new String[] {"begin", "end", ":="})
+                .addComment("/*", "*/").addSpace(" \n").compile();
+        byte[] bytes = save(rules);
+        int stateCount = rules.tokenType.length;
+        int alfabetSize = rules.stateTable.alfabetSize;
+        int cellBytes = rules.stateTable.cellBytes();
+        int types = BinarySetting.HEADER_SIZE + stateCount * alfabetSize * cellBytes;
+        int items = types + stateCount;
+        int words = items + ByteBuffer.wrap(bytes).getInt(ITEM_COUNT) * 4;
+
+        // размеры разделов, не согласованные между собой или с длиной файла
+        assertLoadFails(withChecksum(putInt(bytes, STATE_COUNT, stateCount + 1)));
+        assertLoadFails(withChecksum(putInt(bytes, STATE_COUNT, Const.RS_READ_LITERAL)));
+        assertLoadFails(withChecksum(putInt(bytes, ALFABET_SIZE, alfabetSize + 1)));
+        assertLoadFails(withChecksum(putInt(bytes, ALFABET_SIZE, -1)));
+        assertLoadFails(withChecksum(putInt(bytes, TOKEN_TYPE_COUNT, stateCount - 1)));
+        assertLoadFails(withChecksum(putInt(bytes, ITEM_COUNT, ByteBuffer.wrap(bytes).getInt(ITEM_COUNT) - 1)));
+        assertLoadFails(withChecksum(putInt(bytes, ITEM_COUNT, Integer.MAX_VALUE)));
+        assertLoadFails(withChecksum(putInt(bytes, WORD_COUNT, ByteBuffer.wrap(bytes).getInt(WORD_COUNT) + 1)));
+        byte[] cell = bytes.clone();
+        cell[CELL_BYTES] = 3;
+        assertLoadFails(withChecksum(cell));
+
+        // значения вне диапазонов: тип токена, символ алфавита, id слова, длина слова
+        byte[] type = bytes.clone();
+        type[types] = (byte) TokenType.values().length;
+        assertLoadFails(withChecksum(type));
+        assertLoadFails(withChecksum(putChar(bytes, items + 2, (char) alfabetSize)));
+        assertLoadFails(withChecksum(putInt(bytes, words, stateCount)));
+        assertLoadFails(withChecksum(putInt(bytes, words, -1)));
+        assertLoadFails(withChecksum(putInt(bytes, words + 4, 1 << 20)));
+        assertLoadFails(withChecksum(putInt(bytes, words + 4, -1)));
+
+        // лишние данные после слов
+        byte[] longer = Arrays.copyOf(bytes, bytes.length + 4);
+        System.arraycopy(bytes, bytes.length - 4, longer, bytes.length, 4);
+        assertLoadFails(withChecksum(longer));
+
+        // неизмененный файл с пересчитанной контрольной суммой читается
+        Path path = dir.resolve("valid.tkb");
+        Files.write(path, withChecksum(bytes.clone()));
+        assertEquals(rules.getWordsMap(), TokenizerSetting.loadBinary(path).wordsMap);
+    }
+
+    private void assertRoundTrip(CompiledRules rules, String text, String message) throws IOException {
+        Path path = dir.resolve("rules.tkb");
+        rules.toSetting().saveBinary(path);
+        TokenizerSetting loaded = TokenizerSetting.loadBinary(path);
+        assertEquals(rules.getWordsMap(), loaded.wordsMap, message);
+        assertArrayEquals(rules.tokenType, loaded.tokenType);
+        assertEquals(rules.toSetting().alfabetaItems, loaded.alfabetaItems, message);
+        assertArrayEquals(rules.stateTable.toCells(), loaded.stateTable.toCells());
+        CompiledRules reloaded = CompiledRules.of(loaded, rules.isSkipSpace());
+        TestTexts.assertSameTokens(TestTexts.tokens(rules, text), TestTexts.tokens(reloaded, text), message);
+    }
+
+    private byte[] save(CompiledRules rules) throws IOException {
+        Path path = dir.resolve("rules.tkb");
+        rules.toSetting().saveBinary(path);
+        return Files.readAllBytes(path);
+    }
+
+    private IOException assertLoadFails(byte[] bytes) throws IOException {
+        Path path = dir.resolve("broken.tkb");
+        Files.write(path, bytes);
+        return assertThrows(IOException.class, () -> TokenizerSetting.loadBinary(path));
+    }
+
+    private static byte[] putInt(byte[] bytes, int offset, int value) {
+        byte[] copy = bytes.clone();
+        ByteBuffer.wrap(copy).putInt(offset, value);
+        return copy;
+    }
+
+    private static byte[] putChar(byte[] bytes, int offset, char value) {
+        byte[] copy = bytes.clone();
+        ByteBuffer.wrap(copy).putChar(offset, value);
+        return copy;
+    }
+
+    /**
+     * Пересчет контрольной суммы, чтобы до проверки содержимого доходило чтение измененного файла
+     */
+    private static byte[] withChecksum(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, bytes.length - 4);
+        ByteBuffer.wrap(bytes).putInt(bytes.length - 4, (int) crc.getValue());
+        return bytes;
+    }
+}
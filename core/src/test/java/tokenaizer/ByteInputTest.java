@@ -0,0 +1,173 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+package tokenaizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Байтовый ввод utf-8 должен давать те же токены и смещения в символах, что и разбор строки,
+ * декодированной JDK: некорректные, укороченные, избыточно длинные последовательности и суррогаты
+ * заменяются на U+FFFD по тем же правилам, в том числе на границе окна отображения файла
+ */
+class ByteInputTest {
+    private static final byte[][] SEQUENCES = {
+            // корректные: 2, 3 и 4 байта, наибольший символ, U+FFFD
+            {(byte) 0xC3, (byte) 0xA9}, {(byte) 0xE2, (byte) 0x82, (byte) 0xAC},
+            {(byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80}, {(byte) 0xF4, (byte) 0x8F, (byte) 0xBF, (byte) 0xBF},
+            {(byte) 0xEF, (byte) 0xBF, (byte) 0xBD},
+            // продолжение без начала и недопустимые первые байты
+            {(byte) 0x80}, {(byte) 0xBF}, {(byte) 0xF5, (byte) 0x80}, {(byte) 0xF8}, {(byte) 0xFE}, {(byte) 0xFF},
+            // избыточно длинные формы
+            {(byte) 0xC0, (byte) 0x80}, {(byte) 0xC1, (byte) 0xBF}, {(byte) 0xE0, (byte) 0x80, (byte) 0x80},
+            {(byte) 0xF0, (byte) 0x80, (byte) 0x80, (byte) 0x80},
+            // суррогаты и символы больше U+10FFFF
+            {(byte) 0xED, (byte) 0xA0, (byte) 0x80}, {(byte) 0xED, (byte) 0xBF, (byte) 0xBF},
+            {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},
+            // укороченные последовательности
+            {(byte) 0xC2}, {(byte) 0xE2, (byte) 0x82}, {(byte) 0xE0, (byte) 0xA0}, {(byte) 0xF0, (byte) 0x9F, (byte) 0x98},
+            {(byte) 0xF0, (byte) 0x90}
+    };
+
+    private static final String[] SHORT_WORDS = {"begin", "end", ":=", "x", "ab"};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void byteInputsMatchDecodedString() throws IOException {
+        for (long seed = 0; seed < 30; seed++) {
+            Random random = new Random(seed);
+            CompiledRules rules = TestTexts.rules(random).compile();
+            byte[] bytes = bytes(random, 3000, 0);
+            List<String> expected = stringTokens(rules, bytes);
+            String message = "seed " + seed;
+
+            Tokenizer tokenizer = rules.newTokenizer();
+            tokenizer.openBytes(bytes, bytes.length, StandardCharsets.UTF_8);
+            TestTexts.assertSameTokens(expected, tokens(tokenizer), message + ", openBytes");
+
+            // прямой буфер без массива, разбор с ненулевой позиции
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 3);
+            direct.put(new byte[] {'x', 'y', 'z'}).put(bytes).position(3);
+            tokenizer.openBuffer(direct, StandardCharsets.UTF_8);
+            TestTexts.assertSameTokens(expected, tokens(tokenizer), message + ", openBuffer");
+
+            tokenizer.openMappedFile(file(bytes), StandardCharsets.UTF_8);
+            TestTexts.assertSameTokens(expected, tokens(tokenizer), message + ", openMappedFile");
+            tokenizer.close();
+        }
+    }
+
+    @Test
+    void sequencesAcrossMapWindowMatchDecodedString() throws IOException {
+        // короткие токены, чтобы в маленьком окне помещался любой токен
+        CompiledRules rules = TokenizerFactory.create().addKeyword(new String[] {"begin", "end", ":="})
+                .addComment("{", "}").addSpace(" \n").compile();
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            byte[] bytes = bytes(random, 3000, 3);
+            List<String> expected = stringTokens(rules, bytes);
+            Path file = file(bytes);
+            for (int window : new int[] {24, 25, 26, 27, 31, 64}) {
+                Tokenizer tokenizer = rules.newTokenizer();
+                tokenizer.setMapWindow(window);
+                tokenizer.openMappedFile(file, StandardCharsets.UTF_8);
+                TestTexts.assertSameTokens(expected, tokens(tokenizer), "seed " + seed + ", window " + window);
+                tokenizer.close();
+            }
+        }
+    }
+
+    /**
+     * Случайный текст utf-8 с некорректными последовательностями
+     * @param random - генератор
+     * @param length - наименьшая длина в байтах
+     * @param maxRun - наибольшее количество кусков подряд без разделителя, 0 - без ограничения
+     * @return байты текста
+     */
+    private static byte[] bytes(Random random, int length, int maxRun) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 16);
+        int run = 0;
+        while (out.size() < length) {
+            byte[] piece;
+            if (maxRun == 0) {
+                piece = random.nextInt(3) == 0 ? SEQUENCES[random.nextInt(SEQUENCES.length)]
+                        : TestTexts.text(random, 1).getBytes(StandardCharsets.UTF_8);
+            }
+            else {
+                piece = random.nextBoolean() ? SEQUENCES[random.nextInt(SEQUENCES.length)]
+                        : SHORT_WORDS[random.nextInt(SHORT_WORDS.length)].getBytes(StandardCharsets.US_ASCII);
+                if (random.nextInt(4) == 0) {
+                    // закрытый коментарий: тело коментария просматривается пакетно до границы окна
+                    ByteArrayOutputStream comment = new ByteArrayOutputStream();
+                    comment.write('{');
+                    comment.write(piece, 0, piece.length);
+                    comment.write('}');
+                    piece = comment.toByteArray();
+                }
+                if (++run > maxRun || random.nextInt(3) == 0) {
+                    out.write(random.nextInt(8) == 0 ? '\n' : ' ');
+                    run = 1;
+                }
+            }
+            out.write(piece, 0, piece.length);
+        }
+        return out.toByteArray();
+    }
+
+    private Path file(byte[] bytes) throws IOException {
+        Path file = dir.resolve("input.txt");
+        Files.write(file, bytes);
+        return file;
+    }
+
+    /**
+     * Токены строки, декодированной из байт средствами JDK
+     */
+    private static List<String> stringTokens(CompiledRules rules, byte[] bytes) throws IOException {
+        Tokenizer tokenizer = rules.newTokenizer();
+        tokenizer.openString(new String(bytes, StandardCharsets.UTF_8));
+        return tokens(tokenizer);
+    }
+
+    /**
+     * Токены со смещением в символах и текстом, одинаковые для символьного и байтового ввода
+     */
+    private static List<String> tokens(Tokenizer tokenizer) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        int id;
+        while ((id = tokenizer.advance()) >= 0) {
+            tokens.add(id + "|" + tokenizer.curTokenCharOffset() + "|" + tokenizer.curLine() + ":" + tokenizer.curPos()
+                    + "|" + tokenizer.curToken());
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,154 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+package tokenaizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * После любой последовательности правок токены документа должны совпадать с полным разбором текста заново
+ */
+class IncrementalTokenizerTest {
+
+    @Test
+    void editsMatchSequential() throws IOException {
+        for (long seed = 0; seed < 40; seed++) {
+            Random random = new Random(seed);
+            CompiledRules rules = TestTexts.rules(random).compile();
+            StringBuilder text = new StringBuilder(TestTexts.text(random, 500));
+            String pieces = TestTexts.text(random, 200);
+            IncrementalTokenizer document = new IncrementalTokenizer(rules);
+            document.setText(text);
+            List<String> before = tokens(document);
+            for (int edit = 0; edit < 60; edit++) {
+                int offset = random.nextInt(text.length() + 1);
+                int removed = Math.min(text.length() - offset, random.nextInt(6));
+                int start = random.nextInt(pieces.length() - 10);
+                String inserted = random.nextInt(4) == 0 ? "" : pieces.substring(start, start + random.nextInt(8));
+                IncrementalTokenizer.Change change = document.edit(offset, removed, inserted);
+                text.replace(offset, offset + removed, inserted);
+
+                String message = "seed " + seed + ", edit " + edit;
+                assertEquals(text.toString(), document.getText(), message);
+                List<String> after = tokens(document);
+                TestTexts.assertSameTokens(TestTexts.tokens(rules, text.toString()), after, message);
+                assertEquals(before.size() - change.oldEnd, after.size() - change.newEnd, message + ", " + change);
+                for (int i = 0; i < change.first; i++) {
+                    assertEquals(before.get(i), after.get(i), message + ", " + change);
+                }
+                before = after;
+            }
+        }
+    }
+
+    @Test
+    void setTextReplacesDocument() throws IOException {
+        Random random = new Random(7);
+        CompiledRules rules = TestTexts.rules(random).compile();
+        IncrementalTokenizer document = new IncrementalTokenizer(rules);
+        document.setText(TestTexts.text(random, 300));
+        String text = TestTexts.text(random, 100);
+        IncrementalTokenizer.Change change = document.setText(text);
+        assertEquals(0, change.first);
+        assertEquals(document.getTokenCount(), change.newEnd);
+        TestTexts.assertSameTokens(TestTexts.tokens(rules, text), tokens(document), "setText");
+    }
+
+    @Test
+    void editOutsideTextFails() throws IOException {
+        IncrementalTokenizer document = new IncrementalTokenizer(TestTexts.rules(new Random(1)).compile());
+        document.setText("begin end");
+        assertThrows(IndexOutOfBoundsException.class, () -> document.edit(5, 5, ""));
+        assertThrows(IndexOutOfBoundsException.class, () -> document.edit(-1, 0, "x"));
+    }
+
+    @Test
+    void editReopensUnclosedLiteral() throws IOException {
+        CompiledRules rules = TokenizerFactory.create().addKeyword(new String[] {"end"}).addLiteral("'", "\\")
+                .addSpace(" ").setSkipSpace(true).compile();
+        IncrementalTokenizer document = new IncrementalTokenizer(rules);
+        document.setText("a 'b' c end");
+        List<String> closed = Arrays.asList("word a", "literal 'b'", "word c", "keyword end");
+        assertEquals(closed, texts(document));
+
+        // экранированная закрывающая кавычка: литерал не закрыт и продолжается до конца текста
+        IncrementalTokenizer.Change change = document.edit(4, 0, "\\");
+        assertEquals("a 'b\\' c end", document.getText());
+        assertEquals(Arrays.asList("word a", "literal 'b\\' c end"), texts(document));
+        // разбор продолжается с контрольной точки блока, поэтому изменение может начинаться раньше литерала
+        assertTrue(change.first <= 1, change.toString());
+        assertEquals(4, change.oldEnd);
+        assertEquals(2, change.newEnd);
+
+        // удаление экранирования снова закрывает литерал
+        change = document.edit(4, 1, "");
+        assertEquals(closed, texts(document));
+        assertTrue(change.first <= 1, change.toString());
+        assertEquals(2, change.oldEnd);
+        assertEquals(4, change.newEnd);
+
+        // удаление закрывающей кавычки
+        document.edit(4, 1, "");
+        assertEquals(Arrays.asList("word a", "literal 'b c end"), texts(document));
+        TestTexts.assertSameTokens(TestTexts.tokens(rules, document.getText()), tokens(document), "unclosed");
+
+        // в длинном документе незакрытый литерал поглощает все следующие блоки, разбор не должен
+        // остановиться на их контрольных точках
+        StringBuilder text = new StringBuilder("a 'b' ");
+        for (int i = 0; i < 2000; i++) {
+            text.append(i % 3 == 0 ? "end " : "x ");
+        }
+        document.setText(text);
+        change = document.edit(4, 0, "\\");
+        assertEquals(2, document.getTokenCount());
+        assertEquals(2, change.newEnd);
+        assertEquals(text.length() + 1 - 2, document.getTokenLength(1));
+        change = document.edit(4, 1, "");
+        assertEquals(2002, document.getTokenCount());
+        assertEquals(2002, change.newEnd);
+        TestTexts.assertSameTokens(TestTexts.tokens(rules, text.toString()), tokens(document), "closed again");
+    }
+
+    private static List<String> texts(IncrementalTokenizer document) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < document.getTokenCount(); i++) {
+            texts.add(document.getTokenType(i) + " " + document.getTokenText(i));
+        }
+        return texts;
+    }
+
+    private static List<String> tokens(IncrementalTokenizer document) {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < document.getTokenCount(); i++) {
+            tokens.add(TestTexts.token(document.getTokenId(i), document.getTokenOffset(i), document.getTokenLength(i),
+                    document.getTokenLine(i), document.getTokenCol(i)));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,114 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Параллельный разбор должен выдавать те же токены, что и последовательный, при любом делении на куски
+ */
+class ParallelTokenizerTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void tokenizeMatchesSequential() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (long seed = 0; seed < 40; seed++) {
+                Random random = new Random(seed);
+                CompiledRules rules = TestTexts.rules(random).compile();
+                String text = TestTexts.text(random, 2000);
+                List<String> expected = TestTexts.tokens(rules, text);
+                for (int chunkSize : new int[] {7, 31, 200, ParallelTokenizer.DEFAULT_CHUNK_SIZE}) {
+                    List<String> actual = new ArrayList<>();
+                    long count = new ParallelTokenizer(rules).setChunkSize(chunkSize).setPool(pool)
+                            .tokenize(text, batch -> TestTexts.addAll(batch, actual));
+                    TestTexts.assertSameTokens(expected, actual, "seed " + seed + ", chunk " + chunkSize);
+                    assertEquals(expected.size(), count);
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void tokenizeFileMatchesSequentialBytes() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (long seed = 0; seed < 20; seed++) {
+                Random random = new Random(seed);
+                CompiledRules rules = TestTexts.rules(random).compile();
+                byte[] bytes = TestTexts.text(random, 2000).getBytes(StandardCharsets.UTF_8);
+                Path file = Files.write(dir.resolve("text" + seed + ".txt"), bytes);
+                Tokenizer tokenizer = rules.newTokenizer();
+                tokenizer.openBytes(bytes, bytes.length, StandardCharsets.UTF_8);
+                List<String> expected = TestTexts.tokens(tokenizer);
+                List<String> actual = new ArrayList<>();
+                new ParallelTokenizer(rules).setChunkSize(53).setPool(pool)
+                        .tokenizeFile(file, StandardCharsets.UTF_8, batch -> TestTexts.addAll(batch, actual));
+                TestTexts.assertSameTokens(expected, actual, "seed " + seed);
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void chunkBoundaryInsideComment() throws IOException {
+        CompiledRules rules = TokenizerFactory.create().addComment("/*", "*/").addSpace(" \n").setSkipSpace(true).compile();
+        String text = "x /* a\nb */ y\n/* open";
+        // граница куска попадает на каждый символ коментария, в том числе между '/' и '*' начала и конца
+        List<String> expected = Arrays.asList("word|0|1|1:1", "comment|2|9|1:3", "word|12|1|2:6", "comment|14|7|3:1");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunkSize = 1; chunkSize <= text.length(); chunkSize++) {
+                List<String> actual = new ArrayList<>();
+                new ParallelTokenizer(rules).setChunkSize(chunkSize).setPool(pool).tokenize(text, batch -> {
+                    for (int i = 0; i < batch.size(); i++) {
+                        actual.add(batch.getType(i) + "|" + batch.offset[i] + "|" + batch.length[i] + "|"
+                                + batch.line[i] + ":" + batch.col[i]);
+                    }
+                });
+                assertEquals(expected, actual, "chunk " + chunkSize);
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
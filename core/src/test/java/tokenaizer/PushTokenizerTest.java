@@ -0,0 +1,99 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+package tokenaizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Разбор текста, поданного кусками любой длины, должен выдавать те же токены, что и разбор текста целиком
+ */
+class PushTokenizerTest {
+
+    @Test
+    void chunksMatchSequential() throws IOException {
+        for (long seed = 0; seed < 40; seed++) {
+            Random random = new Random(seed);
+            CompiledRules rules = TestTexts.rules(random).compile();
+            char[] text = TestTexts.text(random, 1000).toCharArray();
+            Tokenizer tokenizer = rules.newTokenizer();
+            tokenizer.openString(new String(text));
+            List<String> expected = new ArrayList<>();
+            while (tokenizer.advance() >= 0) {
+                expected.add(TestTexts.token(tokenizer.curTokenId(), tokenizer.curTokenOffset(), tokenizer.curTokenLength(),
+                        tokenizer.curLine(), tokenizer.curPos()) + "|" + tokenizer.curTokenText());
+            }
+            for (int maxChunk : new int[] {1, 3, 40, text.length}) {
+                List<String> actual = new ArrayList<>();
+                PushTokenizer push = new PushTokenizer(rules, (id, type, token, offset, line, col) ->
+                        actual.add(TestTexts.token(id, offset, token.length(), line, col) + "|" + token));
+                // буфер переиспользуется и затирается после каждой подачи, как у читающего из сети
+                char[] buffer = new char[maxChunk];
+                for (int pos = 0; pos < text.length; ) {
+                    int length = Math.min(text.length - pos, 1 + random.nextInt(maxChunk));
+                    System.arraycopy(text, pos, buffer, 0, length);
+                    push.feed(buffer, 0, length);
+                    Arrays.fill(buffer, '#');
+                    pos += length;
+                }
+                push.endOfInput();
+                assertTrue(push.isFinished());
+                TestTexts.assertSameTokens(expected, actual, "seed " + seed + ", chunk " + maxChunk);
+            }
+        }
+    }
+
+    @Test
+    void surrogatePairSplitAcrossFeeds() throws IOException {
+        String smile = "\uD83D\uDE00";
+        CompiledRules rules = TokenizerFactory.create().addKeyword(new String[] {smile, "end"}).addComment("/*", "*/")
+                .addSpace(" ").setSkipSpace(true).compile();
+        String text = "a " + smile + " x/*" + smile + "*/ end " + smile;
+        List<String> expected = Arrays.asList("word|a|0|1:1", "keyword|" + smile + "|2|1:3", "word|x|5|1:6",
+                "comment|/*" + smile + "*/|6|1:7", "keyword|end|13|1:14", "keyword|" + smile + "|17|1:18");
+        // второй кусок начинается с каждого символа текста, в том числе с младшей половины суррогатной пары
+        for (int split = 0; split <= text.length(); split++) {
+            List<String> actual = new ArrayList<>();
+            PushTokenizer push = new PushTokenizer(rules, (id, type, token, offset, line, col) ->
+                    actual.add(type + "|" + token + "|" + offset + "|" + line + ":" + col));
+            push.feed(text.substring(0, split).toCharArray());
+            push.feed(text.substring(split).toCharArray());
+            push.endOfInput();
+            assertEquals(expected, actual, "split " + split);
+        }
+    }
+
+    @Test
+    void feedAfterEndOfInputFails() throws IOException {
+        PushTokenizer push = new PushTokenizer(TestTexts.rules(new Random(1)).compile(), (id, type, text, offset, line, col) -> { });
+        push.feed("begin".toCharArray());
+        push.endOfInput();
+        assertThrows(IllegalStateException.class, () -> push.feed("end".toCharArray()));
+    }
+}
@@ -0,0 +1,147 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+
+package tokenaizer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Случайные правила и тексты для сравнения разборов с последовательным токенайзером.
+ * Тексты собираются из кусков, на которых срабатывают заглядывание вперед, коментарии и литералы,
+ * в том числе незакрытые, и символы вне BMP
+ */
+final class TestTexts {
+    private static final String[] KEYWORDS = {"begin", "end", "select", "from", "if", "else", ":=", "::", "(", ")",
+            "+", "==", "=", "be", "sel", "and", "or", "not"};
+    private static final String[][] COMMENTS = {{"/*", "*/"}, {"//", "\n"}, {"--", "\n"}, {"{", "}"}, {"(*", "*)"}};
+    private static final String[][] LITERALS = {{"'", "\\"}, {"\"", "\\"}, {"'", "'"}, {"`", ""}};
+    private static final String[] PIECES = {"begin", "END", "select", "x", "foo", "bar12", "/*", "*/", "//", "--",
+            "\n", "\n", "  ", " ", "'", "\"", "\\", "`", "{", "}", "(*", "*)", ":=", "::", "(", ")", "+", "==", "=",
+            ";", "a", "Be", "sel", "selec", "and", "or", "é", "日本", "😀", "\t", "beginend", "x:=1"};
+
+    private TestTexts() {
+    }
+
+    /**
+     * Случайный набор правил: часть ключевых слов, коментарии, не больше одного литерала, разделители
+     * @param random - генератор
+     * @return фабрика правил
+     */
+    static TokenizerFactory rules(Random random) {
+        List<String> keywords = new ArrayList<>();
+        for (String keyword : KEYWORDS) {
+            if (random.nextInt(3) > 0) {
+                keywords.add(keyword);
+            }
+        }
+        TokenizerFactory factory = TokenizerFactory.create().addKeyword(keywords.toArray(new String[0]));
+        for (String[] comment : COMMENTS) {
+            if (random.nextBoolean()) {
+                factory.addComment(comment[0], comment[1]);
+            }
+        }
+        if (random.nextInt(3) > 0) {
+            String[] literal = LITERALS[random.nextInt(LITERALS.length)];
+            factory.addLiteral(literal[0], literal[1]);
+        }
+        return factory.addSpace(random.nextBoolean() ? " \n\t" : " \n;")
+                .setIgnoreCase(random.nextInt(4) == 0)
+                .setSkipSpace(random.nextBoolean());
+    }
+
+    /**
+     * Случайный текст
+     * @param random - генератор
+     * @param length - наименьшая длина текста
+     * @return текст
+     */
+    static String text(Random random, int length) {
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Описание токена для сравнения списков токенов
+     */
+    static String token(int id, long offset, int length, int line, int col) {
+        return id + "|" + offset + "|" + length + "|" + line + ":" + col;
+    }
+
+    /**
+     * Все оставшиеся токены открытого токенайзера
+     * @param tokenizer - токенайзер
+     * @return описания токенов
+     * @throws IOException
+     */
+    static List<String> tokens(Tokenizer tokenizer) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        int id;
+        while ((id = tokenizer.advance()) >= 0) {
+            tokens.add(token(id, tokenizer.curTokenOffset(), tokenizer.curTokenLength(), tokenizer.curLine(), tokenizer.curPos()));
+        }
+        return tokens;
+    }
+
+    /**
+     * Токены текста последовательным токенайзером
+     * @param rules - правила
+     * @param text - текст
+     * @return описания токенов
+     * @throws IOException
+     */
+    static List<String> tokens(CompiledRules rules, String text) throws IOException {
+        Tokenizer tokenizer = rules.newTokenizer();
+        tokenizer.openString(text);
+        return tokens(tokenizer);
+    }
+
+    /**
+     * Добавление токенов пакета к списку
+     * @param batch - пакет
+     * @param tokens - описания токенов
+     */
+    static void addAll(TokenBatch batch, List<String> tokens) {
+        for (int i = 0; i < batch.size(); i++) {
+            tokens.add(token(batch.id[i], batch.offset[i], batch.length[i], batch.line[i], batch.col[i]));
+        }
+    }
+
+    /**
+     * Сравнение списков токенов с указанием первого расхождения
+     * @param expected - токены последовательного разбора
+     * @param actual - проверяемые токены
+     * @param message - описание случая
+     */
+    static void assertSameTokens(List<String> expected, List<String> actual, String message) {
+        int common = Math.min(expected.size(), actual.size());
+        for (int i = 0; i < common; i++) {
+            assertEquals(expected.get(i), actual.get(i), message + ", token " + i);
+        }
+        assertEquals(expected.size(), actual.size(), message + ", token count");
+    }
+}
@@ -0,0 +1,238 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+package tokenaizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Индекс должен возвращать токены последовательного разбора и становиться недействительным
+ * при изменении файла, правил, пропускаемых токенов или кодировки
+ */
+class TokenIndexTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripMatchesSequential() throws IOException {
+        for (long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            CompiledRules rules = TestTexts.rules(random).compile();
+            Path source = source(TestTexts.text(random, seed == 0 ? 0 : 3000));
+            Path indexFile = dir.resolve("source.tki");
+            Tokenizer tokenizer = rules.newTokenizer();
+            TokenIndex.write(tokenizer, source, StandardCharsets.UTF_8, indexFile);
+            List<String> expected = sequential(rules, source);
+
+            TokenIndex index = TokenIndex.open(indexFile);
+            String message = "seed " + seed;
+            assertEquals(expected.size(), index.size(), message);
+            List<String> actual = new ArrayList<>();
+            for (int i = 0; i < index.size(); i++) {
+                actual.add(TestTexts.token(index.id(i), index.offset(i), index.length(i), index.line(i), index.col(i)));
+                assertEquals(rules.tokenType[index.id(i)], index.type(i), message);
+            }
+            TestTexts.assertSameTokens(expected, actual, message);
+
+            // чтение пакетами с границами, не совпадающими с блоками индекса
+            List<String> batches = new ArrayList<>();
+            TokenBatch batch = new TokenBatch(1 + random.nextInt(300));
+            for (int from = 0; from < index.size(); from += batch.size()) {
+                index.read(from, batch);
+                TestTexts.addAll(batch, batches);
+            }
+            TestTexts.assertSameTokens(expected, batches, message + ", batch " + batch.capacity());
+            assertEquals(0, index.read(index.size(), batch));
+            assertThrows(IndexOutOfBoundsException.class, () -> index.read(index.size() + 1, batch));
+        }
+    }
+
+    @Test
+    void tokensAtBlockBoundary() throws IOException {
+        assertEquals(128, TokenIndex.BLOCK_SIZE);
+        CompiledRules rules = TokenizerFactory.create().addComment("/*", "*/").addSpace(" \n").setSkipSpace(true).compile();
+        // 127 слов, многострочный коментарий последним токеном первого блока, затем 0, 1 или 2 токена второго блока
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < 127; i++) {
+            prefix.append("x ");
+        }
+        prefix.append("/* a\nb */");
+        String[] texts = {prefix.toString(), prefix + " y", prefix + " y z"};
+        for (int extra = 0; extra < texts.length; extra++) {
+            Path source = source(texts[extra]);
+            Path indexFile = dir.resolve("boundary.tki");
+            TokenIndex.write(rules.newTokenizer(), source, StandardCharsets.UTF_8, indexFile);
+            TokenIndex index = TokenIndex.open(indexFile);
+            String message = (128 + extra) + " tokens";
+            assertEquals(128 + extra, index.size(), message);
+
+            assertEquals("word|252|1|1:253", token(index, 126), message);
+            assertEquals("comment|254|9|1:255", token(index, 127), message);
+            if (extra > 0) {
+                // первый токен второго блока: смещение и строка берутся из каталога блоков
+                assertEquals("word|264|1|2:6", token(index, 128), message);
+            }
+            if (extra > 1) {
+                assertEquals("word|266|1|2:8", token(index, 129), message);
+            }
+
+            // пакет через границу блоков, пакет с начала второго блока и чтение за концом
+            TokenBatch batch = new TokenBatch(16);
+            assertEquals(8 + extra, index.read(120, batch), message);
+            assertEquals(TokenType.comment, batch.getType(7));
+            assertEquals(254, batch.offset[7]);
+            assertEquals(extra, index.read(128, batch), message);
+            if (extra > 0) {
+                assertEquals(264, batch.offset[0]);
+                assertEquals(2, batch.line[0]);
+            }
+            assertEquals(0, index.read(index.size(), batch));
+            assertThrows(IndexOutOfBoundsException.class, () -> index.read(index.size() + 1, batch));
+            assertEquals(sequential(rules, source).size(), index.size());
+        }
+    }
+
+    private static String token(TokenIndex index, int i) {
+        return index.type(i) + "|" + index.offset(i) + "|" + index.length(i) + "|" + index.line(i) + ":" + index.col(i);
+    }
+
+    @Test
+    void invalidatedByChanges() throws IOException {
+        Random random = new Random(11);
+        TokenizerFactory factory = TestTexts.rules(random).setSkipSpace(true);
+        CompiledRules rules = factory.compile();
+        String text = TestTexts.text(random, 2000);
+        Path source = source(text);
+        Path indexFile = dir.resolve("source.tki");
+        Tokenizer tokenizer = rules.newTokenizer();
+        TokenIndex.write(tokenizer, source, StandardCharsets.UTF_8, indexFile);
+        TokenIndex index = TokenIndex.open(indexFile);
+        assertTrue(index.isValidFor(source, StandardCharsets.UTF_8, tokenizer));
+
+        assertFalse(index.isValidFor(source, StandardCharsets.ISO_8859_1, tokenizer), "charset");
+        assertFalse(index.isValidFor(source, StandardCharsets.UTF_8, rules.newTokenizer().setSkipSpace(false)), "skip space");
+        assertFalse(index.isValidFor(source, StandardCharsets.UTF_8, rules.newTokenizer().setSkip(TokenType.comment, true)),
+                "skip comments");
+        CompiledRules otherRules = factory.addKeyword(new String[] {"otherkeyword"}).compile();
+        assertFalse(index.isValidFor(source, StandardCharsets.UTF_8, otherRules.newTokenizer()), "rules");
+
+        // тот же размер, другие байты
+        char[] changed = text.toCharArray();
+        changed[text.length() / 2] = changed[text.length() / 2] == 'x' ? 'y' : 'x';
+        Files.write(source, new String(changed).getBytes(StandardCharsets.UTF_8));
+        assertFalse(index.isValidFor(source, StandardCharsets.UTF_8, tokenizer), "same size");
+        Files.write(source, (text + "x").getBytes(StandardCharsets.UTF_8));
+        assertFalse(index.isValidFor(source, StandardCharsets.UTF_8, tokenizer), "appended");
+        Files.write(source, text.getBytes(StandardCharsets.UTF_8));
+        assertTrue(index.isValidFor(source, StandardCharsets.UTF_8, tokenizer), "restored");
+    }
+
+    @Test
+    void openOrBuildReusesValidIndex() throws IOException {
+        Random random = new Random(12);
+        CompiledRules rules = TestTexts.rules(random).compile();
+        Path source = source(TestTexts.text(random, 2000));
+        Path indexFile = dir.resolve("source.tki");
+        Tokenizer tokenizer = rules.newTokenizer();
+        TokenIndex first = TokenIndex.openOrBuild(indexFile, source, StandardCharsets.UTF_8, tokenizer);
+        FileTime built = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(indexFile, built);
+
+        TokenIndex.openOrBuild(indexFile, source, StandardCharsets.UTF_8, tokenizer);
+        assertEquals(built, Files.getLastModifiedTime(indexFile), "rebuilt valid index");
+
+        // другие пропускаемые токены - индекс строится заново
+        tokenizer.setSkip(TokenType.comment, true);
+        TokenIndex rebuilt = TokenIndex.openOrBuild(indexFile, source, StandardCharsets.UTF_8, tokenizer);
+        assertTrue(rebuilt.isValidFor(source, StandardCharsets.UTF_8, tokenizer));
+        assertFalse(first.isValidFor(source, StandardCharsets.UTF_8, tokenizer));
+        assertEquals(sequential(tokenizer, source).size(), rebuilt.size());
+    }
+
+    @Test
+    void corruptedIndexIsRebuilt() throws IOException {
+        Random random = new Random(13);
+        CompiledRules rules = TestTexts.rules(random).compile();
+        Path source = source(TestTexts.text(random, 2000));
+        Path indexFile = dir.resolve("source.tki");
+        Tokenizer tokenizer = rules.newTokenizer();
+        TokenIndex.write(tokenizer, source, StandardCharsets.UTF_8, indexFile);
+        byte[] bytes = Files.readAllBytes(indexFile);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(indexFile, bytes);
+        assertThrows(IOException.class, () -> TokenIndex.open(indexFile));
+
+        TokenIndex index = TokenIndex.openOrBuild(indexFile, source, StandardCharsets.UTF_8, tokenizer);
+        assertEquals(sequential(rules, source).size(), index.size());
+    }
+
+    @Test
+    void openIndexSurvivesRebuild() throws IOException {
+        Random random = new Random(14);
+        CompiledRules rules = TestTexts.rules(random).compile();
+        Path source = source(TestTexts.text(random, 3000));
+        Path indexFile = dir.resolve("source.tki");
+        TokenIndex.write(rules.newTokenizer(), source, StandardCharsets.UTF_8, indexFile);
+        TokenIndex old = TokenIndex.open(indexFile);
+        List<String> expected = sequential(rules, source);
+
+        // запись нового индекса не должна менять отображение уже открытого
+        source(TestTexts.text(random, 100));
+        TokenIndex.write(rules.newTokenizer(), source, StandardCharsets.UTF_8, indexFile);
+        List<String> actual = new ArrayList<>();
+        TokenBatch batch = new TokenBatch(1000);
+        for (int from = 0; from < old.size(); from += batch.size()) {
+            old.read(from, batch);
+            TestTexts.addAll(batch, actual);
+        }
+        TestTexts.assertSameTokens(expected, actual, "old index");
+        assertEquals(sequential(rules, source).size(), TokenIndex.open(indexFile).size());
+    }
+
+    private Path source(String text) throws IOException {
+        Path source = dir.resolve("source.txt");
+        Files.write(source, text.getBytes(StandardCharsets.UTF_8));
+        return source;
+    }
+
+    private static List<String> sequential(CompiledRules rules, Path source) throws IOException {
+        return sequential(rules.newTokenizer(), source);
+    }
+
+    private static List<String> sequential(Tokenizer tokenizer, Path source) throws IOException {
+        byte[] bytes = Files.readAllBytes(source);
+        tokenizer.openBytes(bytes, bytes.length, StandardCharsets.UTF_8);
+        return TestTexts.tokens(tokenizer);
+    }
+}
@@ -0,0 +1,170 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+package tokenaizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Деление потока токенов текста по кускам: токены и точные размеры частей должны совпадать
+ * с последовательным разбором при любом порядке деления и обхода
+ */
+class TokenSpliteratorTest {
+    private static final int SIZED = Spliterator.SIZED | Spliterator.SUBSIZED;
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @Test
+    void parallelStreamMatchesAdvance() throws IOException {
+        for (long seed = 0; seed < 4; seed++) {
+            Random random = new Random(seed);
+            CompiledRules rules = TestTexts.rules(random).compile();
+            String text = TestTexts.text(random, TokenSpliterator.MIN_SPLIT_CHARS * 3);
+            List<TokenRecord> expected = advance(rules, text);
+            ParallelTokenizer parallel = new ParallelTokenizer(rules).setChunkSize(4096).setPool(POOL);
+            assertEquals(expected, parallel.tokens(text).parallel().collect(Collectors.toList()), "seed " + seed);
+            // размер SIZED потока берется из количества токенов кусков, без обхода
+            assertEquals(expected.size(), parallel.tokens(text).parallel().count(), "seed " + seed);
+            int[] ids = expected.stream().mapToInt(TokenRecord::id).toArray();
+            assertArrayEquals(ids, parallel.tokenIds(text.toCharArray()).parallel().toArray());
+        }
+    }
+
+    @Test
+    void nestedSplitsKeepExactSizes() throws IOException {
+        Random random = new Random(5);
+        CompiledRules rules = TestTexts.rules(random).compile();
+        String text = TestTexts.text(random, TokenSpliterator.MIN_SPLIT_CHARS * 4);
+        List<TokenRecord> expected = advance(rules, text);
+        Spliterator<TokenRecord> spliterator = new ParallelTokenizer(rules).setPool(POOL).tokens(text).spliterator();
+        assertFalse(spliterator.hasCharacteristics(Spliterator.SIZED));
+
+        List<TokenRecord> actual = new ArrayList<>();
+        int leaves = split(spliterator, expected.size(), actual);
+        assertTrue(leaves > 2, "leaves " + leaves);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void splitAfterPartialTraversal() throws IOException {
+        Random random = new Random(6);
+        CompiledRules rules = TestTexts.rules(random).compile();
+        String text = TestTexts.text(random, TokenSpliterator.MIN_SPLIT_CHARS * 4);
+        List<TokenRecord> expected = advance(rules, text);
+        Spliterator<TokenRecord> suffix = new ParallelTokenizer(rules).setPool(POOL).tokens(text).spliterator();
+        Spliterator<TokenRecord> prefix = suffix.trySplit();
+        assertNotNull(prefix);
+
+        // обход начинается внутри куска, затем остаток делится: начало получает недочитанный кусок
+        List<TokenRecord> actual = new ArrayList<>();
+        long size = prefix.estimateSize();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(prefix.tryAdvance(actual::add));
+        }
+        assertEquals(size - 3, prefix.estimateSize());
+        Spliterator<TokenRecord> head = prefix.trySplit();
+        assertNotNull(head);
+        assertEquals(size - 3, head.estimateSize() + prefix.estimateSize());
+        head.forEachRemaining(actual::add);
+        prefix.forEachRemaining(actual::add);
+        assertEquals(0, prefix.estimateSize());
+        suffix.forEachRemaining(actual::add);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void shortOrStartedStreamIsNotSplit() throws IOException {
+        Random random = new Random(7);
+        CompiledRules rules = TestTexts.rules(random).compile();
+        String text = TestTexts.text(random, TokenSpliterator.MIN_SPLIT_CHARS);
+        ParallelTokenizer parallel = new ParallelTokenizer(rules).setPool(POOL);
+
+        String shorter = text.substring(0, TokenSpliterator.MIN_SPLIT_CHARS - 1);
+        Spliterator<TokenRecord> spliterator = parallel.tokens(shorter).spliterator();
+        assertNull(spliterator.trySplit());
+        assertFalse(spliterator.hasCharacteristics(Spliterator.SIZED));
+        assertEquals(advance(rules, shorter), parallel.tokens(shorter).parallel().collect(Collectors.toList()));
+
+        String exact = text.substring(0, TokenSpliterator.MIN_SPLIT_CHARS);
+        spliterator = parallel.tokens(exact).spliterator();
+        assertNotNull(spliterator.trySplit());
+        assertTrue(spliterator.hasCharacteristics(SIZED));
+
+        // начатый обход не делится, токены продолжаются с текущего места
+        List<TokenRecord> expected = advance(rules, exact);
+        spliterator = parallel.tokens(exact).spliterator();
+        List<TokenRecord> actual = new ArrayList<>();
+        assertTrue(spliterator.tryAdvance(actual::add));
+        assertNull(spliterator.trySplit());
+        spliterator.forEachRemaining(actual::add);
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Деление до конца с проверкой размеров частей и обход частей по порядку
+     * @param spliterator - часть потока
+     * @param size - ожидаемый размер части
+     * @param tokens - токены частей в порядке обхода
+     * @return количество неделимых частей
+     */
+    private static int split(Spliterator<TokenRecord> spliterator, long size, List<TokenRecord> tokens) {
+        Spliterator<TokenRecord> prefix = spliterator.trySplit();
+        if (prefix == null) {
+            assertEquals(size, spliterator.estimateSize());
+            int from = tokens.size();
+            spliterator.forEachRemaining(tokens::add);
+            assertEquals(size, tokens.size() - from);
+            return 1;
+        }
+        assertTrue(prefix.hasCharacteristics(SIZED));
+        assertTrue(spliterator.hasCharacteristics(SIZED));
+        long prefixSize = prefix.estimateSize();
+        assertEquals(size, prefixSize + spliterator.estimateSize());
+        return split(prefix, prefixSize, tokens) + split(spliterator, size - prefixSize, tokens);
+    }
+
+    /**
+     * Токены последовательного разбора через advance()
+     */
+    private static List<TokenRecord> advance(CompiledRules rules, String text) throws IOException {
+        Tokenizer tokenizer = rules.newTokenizer();
+        tokenizer.openString(text);
+        List<TokenRecord> tokens = new ArrayList<>();
+        int id;
+        while ((id = tokenizer.advance()) >= 0) {
+            tokens.add(new TokenRecord(id, tokenizer.curTokenType(), tokenizer.curToken(), tokenizer.curTokenOffset(),
+                    tokenizer.curTokenLength(), tokenizer.curLine(), tokenizer.curPos()));
+        }
+        return tokens;
+    }
+}
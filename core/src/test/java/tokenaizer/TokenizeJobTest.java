@@ -0,0 +1,219 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+package tokenaizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Порядок выдачи результатов, совпадение токенов с последовательным разбором и выдача ошибок разбора
+ */
+class TokenizeJobTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void orderedDeliversInPathOrder() throws IOException {
+        Random random = new Random(1);
+        CompiledRules rules = TestTexts.rules(random).compile();
+        List<Path> files = files(random, 30);
+        List<Path> delivered = new ArrayList<>();
+        TokenizeJob.Stats stats = new TokenizeJob(rules).setOrdered(true).setMaxInFlightBytes(20000).setMaxOpenFiles(2)
+                .run(dir, file -> delivered.add(file.getPath()));
+        assertEquals(files, delivered);
+        assertEquals(files.size(), stats.getFiles());
+        assertEquals(0, stats.getFailedFiles());
+    }
+
+    @Test
+    void fileLargerThanMemoryLimitComesFirst() throws IOException {
+        CompiledRules rules = TokenizerFactory.create().addKeyword(new String[] {"begin", "end"}).addSpace(" ")
+                .setSkipSpace(true).compile();
+        // первый файл больше ограничения памяти и разбирается дольше остальных, последний пустой
+        List<Path> files = new ArrayList<>();
+        List<Long> expected = new ArrayList<>();
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            large.append("begin end ");
+        }
+        files.add(Files.write(dir.resolve("a-large.txt"), large.toString().getBytes(StandardCharsets.US_ASCII)));
+        expected.add(10000L);
+        for (int i = 1; i <= 5; i++) {
+            files.add(Files.write(dir.resolve("b-small" + i + ".txt"), "end ".repeat(i).getBytes(StandardCharsets.US_ASCII)));
+            expected.add((long) i);
+        }
+        files.add(Files.write(dir.resolve("c-empty.txt"), new byte[0]));
+        expected.add(0L);
+
+        List<Path> delivered = new ArrayList<>();
+        List<Long> tokenCounts = new ArrayList<>();
+        TokenizeJob.Stats stats = new TokenizeJob(rules).setOrdered(true).setMaxInFlightBytes(1000)
+                .run(files, file -> {
+                    assertNull(file.getError());
+                    delivered.add(file.getPath());
+                    tokenCounts.add(file.getTokenCount());
+                });
+        assertEquals(files, delivered);
+        assertEquals(expected, tokenCounts);
+        assertEquals(10015, stats.getTokens());
+        assertEquals(large.length() + 60, stats.getBytes());
+    }
+
+    @Test
+    void tokensMatchSequential() throws IOException {
+        for (boolean ordered : new boolean[] {true, false}) {
+            Random random = new Random(ordered ? 2 : 3);
+            CompiledRules rules = TestTexts.rules(random).compile();
+            List<Path> files = files(random, 25);
+            Map<Path, List<String>> actual = new HashMap<>();
+            TokenizeJob.Stats stats = new TokenizeJob(rules).setOrdered(ordered).setMaxInFlightBytes(20000)
+                    .run(files, file -> {
+                        assertNull(file.getError());
+                        List<String> tokens = new ArrayList<>();
+                        for (TokenBatch batch : file.getBatches()) {
+                            TestTexts.addAll(batch, tokens);
+                        }
+                        assertEquals(tokens.size(), file.getTokenCount());
+                        assertNull(actual.put(file.getPath(), tokens), "delivered twice: " + file.getPath());
+                    });
+            assertEquals(files.size(), actual.size());
+            long tokenCount = 0;
+            for (Path path : files) {
+                byte[] bytes = Files.readAllBytes(path);
+                Tokenizer tokenizer = rules.newTokenizer();
+                tokenizer.openBytes(bytes, bytes.length, StandardCharsets.UTF_8);
+                List<String> expected = TestTexts.tokens(tokenizer);
+                TestTexts.assertSameTokens(expected, actual.get(path), path + ", ordered " + ordered);
+                tokenCount += expected.size();
+            }
+            assertEquals(tokenCount, stats.getTokens());
+        }
+    }
+
+    @Test
+    void missingFileIsReportedInResult() throws IOException {
+        Random random = new Random(4);
+        CompiledRules rules = TestTexts.rules(random).compile();
+        List<Path> files = new ArrayList<>(files(random, 5));
+        files.add(2, dir.resolve("missing.txt"));
+        List<TokenizeJob.FileResult> delivered = new ArrayList<>();
+        TokenizeJob.Stats stats = new TokenizeJob(rules).run(files, delivered::add);
+        assertEquals(files.size(), delivered.size());
+        assertInstanceOf(NoSuchFileException.class, delivered.get(2).getError());
+        assertNull(delivered.get(3).getError());
+        assertEquals(1, stats.getFailedFiles());
+    }
+
+    @Test
+    void errorInTokenizerIsReportedInResult() throws IOException {
+        Random random = new Random(5);
+        CompiledRules rules = TestTexts.rules(random).compile();
+        List<Path> files = files(random, 8);
+        List<TokenizeJob.FileResult> delivered = new ArrayList<>();
+        // Error из декодера не должен оставить запуск ждать результат, который не придет
+        TokenizeJob.Stats stats = new TokenizeJob(rules).setCharset(new FailingCharset()).setMaxOpenFiles(1)
+                .run(files, delivered::add);
+        assertEquals(files.size(), delivered.size());
+        int failed = 0;
+        for (TokenizeJob.FileResult file : delivered) {
+            // пустой файл не декодируется
+            if (file.getBytes() > 0) {
+                assertNotNull(file.getError(), file.getPath().toString());
+                assertInstanceOf(AssertionError.class, file.getError().getCause());
+                failed++;
+            }
+        }
+        assertTrue(failed > 0);
+        assertEquals(failed, stats.getFailedFiles());
+    }
+
+    /**
+     * Случайные файлы в каталоге теста
+     * @param random - генератор
+     * @param count - количество файлов
+     * @return пути в порядке обхода дерева
+     * @throws IOException
+     */
+    private List<Path> files(Random random, int count) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path file = dir.resolve(String.format("file%03d.txt", i));
+            // разные размеры, чтобы задачи завершались не по порядку
+            String text = i % 7 == 3 ? "" : TestTexts.text(random, random.nextInt(i % 3 == 0 ? 20000 : 500));
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Кодировка, декодер которой падает с Error
+     */
+    private static final class FailingCharset extends Charset {
+        FailingCharset() {
+            super("x-failing", null);
+        }
+
+        @Override
+        public boolean contains(Charset cs) {
+            return false;
+        }
+
+        @Override
+        public CharsetDecoder newDecoder() {
+            return new CharsetDecoder(this, 1, 1) {
+                @Override
+                protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+                    throw new AssertionError("decoder failure");
+                }
+            };
+        }
+
+        @Override
+        public CharsetEncoder newEncoder() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*      Tokenaizer library for split text on tokens by rule
+        Copyright (C) 2024  Fatiev Michail
+
+        This program is free software; you can redistribute it and/or
+        modify it under the terms of the GNU General Public License
+        as published by the Free Software Foundation; either version 2
+        of the License, or (at your option) any later version.
+
+        This program is distributed in the hope that it will be useful,
+        but WITHOUT ANY WARRANTY; without even the implied warranty of
+        MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+        GNU General Public License for more details.
+
+        You should have received a copy of the GNU General Public License
+        along with this program; if not, see
+        <https://www.gnu.org/licenses/>.
+
+        Fatiev Michail fatgraynex@gmail.com
+*/
+package tokenaizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Минимизация автомата не должна объединять id токенов разных правил
+ */
+class TokenizerFactoryTest {
+    private static final String[] KEYWORDS = {"begin", "end", "select", ":=", "(", ")", "+"};
+    private static final String[][] COMMENTS = {{"/*", "*/"}, {"//", "\n"}, {"{", "}"}, {"(*", "*)"}};
+    private static final String[][] LITERALS = {{"'", "\\"}, {"\"", "\\"}, {"`", ""}};
+
+    @Test
+    void commentRulesKeepDistinctIds() throws IOException {
+        Tokenizer tokenizer = TokenizerFactory.create().addComment("/*", "*/").addComment("{", "}")
+                .addSpace(" ").setSkipSpace(true).newTokenizer();
+        tokenizer.openString("/*a*/ {b} /*c*/");
+        int slashStar = tokenizer.advance();
+        int brace = tokenizer.advance();
+        assertEquals(TokenType.comment, tokenizer.curTokenType());
+        assertNotEquals(slashStar, brace);
+        assertEquals(slashStar, tokenizer.advance());
+    }
+
+    @Test
+    void everyRuleKeepsDistinctId() throws IOException {
+        for (boolean ignoreCase : new boolean[] {false, true}) {
+            TokenizerFactory factory = TokenizerFactory.create().addKeyword(KEYWORDS).addSpace(" \n")
+                    .setSkipSpace(true).setIgnoreCase(ignoreCase);
+            Map<String, String> samples = new HashMap<>();
+            for (String keyword : KEYWORDS) {
+                samples.put(keyword, keyword);
+            }
+            for (String[] comment : COMMENTS) {
+                factory.addComment(comment[0], comment[1]);
+                samples.put(comment[0] + "x" + comment[1], "comment " + comment[0]);
+            }
+            for (String[] literal : LITERALS) {
+                factory.addLiteral(literal[0], literal[1]);
+                samples.put(literal[0] + "x" + literal[0], "literal " + literal[0]);
+            }
+            CompiledRules rules = factory.compile();
+            assertTrue(factory.getStateCount() < factory.getInitialStateCount());
+
+            Map<Integer, String> ruleOfId = new HashMap<>();
+            for (Map.Entry<String, String> sample : samples.entrySet()) {
+                List<Integer> ids = ids(rules, sample.getKey() + " " + sample.getKey());
+                assertEquals(2, ids.size(), sample.getValue());
+                assertEquals(ids.get(0), ids.get(1), sample.getValue());
+                assertNull(ruleOfId.put(ids.get(0), sample.getValue()),
+                        sample.getValue() + " shares id " + ids.get(0) + ", ignoreCase " + ignoreCase);
+            }
+            assertNull(ruleOfId.get(ids(rules, "word").get(0)), "word shares an id with a rule");
+        }
+    }
+
+    private static List<Integer> ids(CompiledRules rules, String text) throws IOException {
+        Tokenizer tokenizer = rules.newTokenizer();
+        tokenizer.openString(text);
+        List<Integer> ids = new ArrayList<>();
+        int id;
+        while ((id = tokenizer.advance()) >= 0) {
+            ids.add(id);
+        }
+        return ids;
+    }
+}